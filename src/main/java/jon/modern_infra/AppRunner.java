@@ -2,6 +2,8 @@ package jon.modern_infra;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.data.jdbc.repository.config.EnableJdbcRepositories;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
@@ -12,10 +14,19 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 @EnableJdbcRepositories
 @EnableJpaAuditing
 @EnableTransactionManagement
+@EnableCaching
 public class AppRunner {
+	//Enough for every step of this context, beyond that steps are dropped
+	private static final int STARTUP_STEPS = 20_000;
 
 	public static void main(String[] args) {
-		SpringApplication.run(AppRunner.class, args);
+		var application = new SpringApplication(AppRunner.class);
+		//Read before the context exists, so it can only come from -Dmi.startup.profiling=true or MI_STARTUP_PROFILING=true.
+		//Steps are served by /actuator/startup and, aggregated per bean, by /actuator/startupbeans
+		if (Boolean.getBoolean("mi.startup.profiling") || Boolean.parseBoolean(System.getenv("MI_STARTUP_PROFILING"))) {
+			application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS));
+		}
+		application.run(args);
 	}
 
 }
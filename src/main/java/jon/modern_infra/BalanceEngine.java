@@ -0,0 +1,140 @@
+package jon.modern_infra;
+
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//Running balance per account, updated as movements arrive, with a snapshot at the start of every month.
+//A point in time balance is one snapshot plus, at most, a month of daily totals. Nothing is replayed.
+//Amounts are fixed point longs in cents, BigDecimal only at the edges.
+@Component
+class BalanceEngine {
+    static final int SCALE = 2;
+
+    private final Map<String, AccountLedger> ledgers = new ConcurrentHashMap<>();
+
+    void apply(String accountNumber, LocalDate date, BigDecimal amount) {
+        apply(accountNumber, date, toCents(amount));
+    }
+
+    void apply(String accountNumber, LocalDate date, long cents) {
+        ledgers.computeIfAbsent(accountNumber, account -> new AccountLedger()).apply(date, cents);
+    }
+
+    BigDecimal balance(String accountNumber) {
+        var ledger = ledgers.get(accountNumber);
+        return toBigDecimal(ledger == null ? 0 : ledger.balance());
+    }
+
+    //Balance at the start of the given day, movements of that day excluded
+    BigDecimal balanceAt(String accountNumber, LocalDate date) {
+        var ledger = ledgers.get(accountNumber);
+        return toBigDecimal(ledger == null ? 0 : ledger.balanceAt(date));
+    }
+
+    //Cents are never rounded away, callers validate the scale first (see hasValidScale)
+    static long toCents(BigDecimal amount) {
+        if (!hasValidScale(amount)) {
+            throw new IllegalArgumentException("Amount " + amount + " has more than " + SCALE + " decimals");
+        }
+        return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    //1.5 and 2.500 are fine, 1.005 is not
+    static boolean hasValidScale(BigDecimal amount) {
+        return amount.stripTrailingZeros().scale() <= SCALE;
+    }
+
+    static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    static final class AccountLedger {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        //Keyed by the first day of the month
+        private final TreeMap<LocalDate, Month> months = new TreeMap<>();
+        private long balance;
+
+        void apply(LocalDate date, long cents) {
+            var monthStart = date.withDayOfMonth(1);
+            lock.writeLock().lock();
+            try {
+                var month = months.get(monthStart);
+                if (month == null) {
+                    var previous = months.lowerEntry(monthStart);
+                    month = new Month(previous == null ? 0 : previous.getValue().closing());
+                    months.put(monthStart, month);
+                }
+                month.add(date.getDayOfMonth(), cents);
+
+                //Late movement, every later snapshot moves with it. At most a handful of months in practice
+                for (var later : months.tailMap(monthStart, false).values()) {
+                    later.opening += cents;
+                }
+                balance += cents;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        long balance() {
+            lock.readLock().lock();
+            try {
+                return balance;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long balanceAt(LocalDate date) {
+            lock.readLock().lock();
+            try {
+                var entry = months.floorEntry(date.withDayOfMonth(1));
+                if (entry == null) {
+                    return 0;
+                }
+                var month = entry.getValue();
+                return entry.getKey().equals(date.withDayOfMonth(1))
+                        ? month.opening + month.totalBefore(date.getDayOfMonth())
+                        : month.closing();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    //Snapshot at the start of the month plus the net movement of each day, so a read inside the month
+    //adds at most 30 longs regardless of how many movements the account has
+    static final class Month {
+        private long opening;
+        private long total;
+        private final long[] days = new long[32];
+
+        Month(long opening) {
+            this.opening = opening;
+        }
+
+        void add(int dayOfMonth, long cents) {
+            days[dayOfMonth] += cents;
+            total += cents;
+        }
+
+        long totalBefore(int dayOfMonth) {
+            var sum = 0L;
+            for (int day = 1; day < dayOfMonth; day++) {
+                sum += days[day];
+            }
+            return sum;
+        }
+
+        long closing() {
+            return opening + total;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package jon.modern_infra;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validator;
+import jon.modern_infra.common.store.AuditingCallback;
+import jon.modern_infra.common.store.User;
+import jon.modern_infra.common.store.UserBatchRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionException;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.item.file.mapping.DefaultLineMapper;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.NonNull;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static java.util.stream.Collectors.joining;
+
+@RestController
+@RequestMapping("/batch")
+@Slf4j
+class BatchExample {
+    private final Job userImportJob;
+    private final JobExplorer jobExplorer;
+    private final Path importDir;
+    //Async so the request only waits until the execution is created, the import itself can take minutes
+    private final TaskExecutorJobLauncher jobLauncher = new TaskExecutorJobLauncher();
+
+    public BatchExample(Job userImportJob, JobRepository jobRepository, JobExplorer jobExplorer,
+                        @Value("${mi.users.import.dir:./import}") Path importDir) {
+        this.userImportJob = userImportJob;
+        this.jobExplorer = jobExplorer;
+        this.importDir = importDir.toAbsolutePath().normalize();
+
+        var executor = new SimpleAsyncTaskExecutor("user-import-launcher-");
+        executor.setVirtualThreads(true);
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.setTaskExecutor(executor);
+    }
+
+    //Same file again restarts the last execution from its last committed chunk, a completed file answers 409
+    @PostMapping("/users/import")
+    public ResponseEntity<ImportStatus> importUsers(@RequestParam String file) throws JobExecutionException {
+        if (!StringUtils.hasText(file)) {
+            return ResponseEntity.badRequest().build();
+        }
+        var path = importDir.resolve(file).normalize();
+        if (!path.startsWith(importDir) || !Files.isReadable(path)) {
+            log.warn("Users import of {} refused, not readable or outside {}", file, importDir);
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            var execution = jobLauncher.run(userImportJob, new JobParametersBuilder()
+                    .addString(UserImportJobConfig.FILE, path.toString())
+                    .toJobParameters());
+            return ResponseEntity.accepted().body(ImportStatus.of(execution));
+        } catch (JobInstanceAlreadyCompleteException | JobExecutionAlreadyRunningException ex) {
+            log.warn("Users import of {} not started: {}", path, ex.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @GetMapping("/users/import/{executionId}")
+    public ResponseEntity<ImportStatus> importStatus(@PathVariable long executionId) {
+        return Optional.ofNullable(jobExplorer.getJobExecution(executionId))
+                .map(ImportStatus::of)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    record ImportStatus(long executionId, BatchStatus status, long read, long written, long invalid, long skipped, long rowsPerSecond) {
+        //Only the workers count rows, the manager step aggregates them again. Written are the rows actually inserted,
+        //the write count also has the ids that were already there (restarts, the same rows imported twice)
+        static ImportStatus of(JobExecution execution) {
+            var workers = execution.getStepExecutions().stream().filter(step -> step.getStepName().contains(":")).toList();
+            var written = workers.stream().mapToLong(step -> step.getExecutionContext().getLong(UserImportJobConfig.InsertingWriter.INSERTED, 0)).sum();
+            var end = execution.getEndTime() == null ? LocalDateTime.now() : execution.getEndTime();
+            var millis = execution.getStartTime() == null ? 0 : Duration.between(execution.getStartTime(), end).toMillis();
+
+            return new ImportStatus(
+                    execution.getId(),
+                    execution.getStatus(),
+                    workers.stream().mapToLong(StepExecution::getReadCount).sum(),
+                    written,
+                    workers.stream().mapToLong(StepExecution::getFilterCount).sum(),
+                    workers.stream().mapToLong(StepExecution::getSkipCount).sum(),
+                    millis == 0 ? 0 : written * 1_000 / millis
+            );
+        }
+    }
+}
+
+//Bulk import of users from CSV or NDJSON. The file is split in row ranges, one partition per worker, each one
+//streaming its range and inserting chunks with a JDBC batch. Chunks commit their reader position, so a failed
+//execution restarted with the same file goes on from the last commit of every unfinished partition
+@Configuration
+@Slf4j
+class UserImportJobConfig {
+    static final String FILE = "file";
+    private static final String FROM = "from";
+    private static final String TO = "to";
+    private static final String[] CSV_COLUMNS = {"id", "realname", "username", "email", "password", "phoneNumbers"};
+
+    @Bean
+    public Job userImportJob(JobRepository jobRepository, Step userImportManagerStep) {
+        return new JobBuilder("userImport", jobRepository)
+                .start(userImportManagerStep)
+                .listener(new JobExecutionListener() {
+                    @Override
+                    public void afterJob(JobExecution execution) {
+                        var status = BatchExample.ImportStatus.of(execution);
+                        log.info("Users import {} {}: {} rows written, {} invalid, {} skipped, {} rows/s",
+                                execution.getJobParameters().getString(FILE), status.status(), status.written(), status.invalid(), status.skipped(), status.rowsPerSecond());
+                    }
+                })
+                .build();
+    }
+
+    @Bean
+    public Step userImportManagerStep(JobRepository jobRepository, Step userImportWorkerStep, Partitioner userImportPartitioner,
+                                      @Value("${mi.users.import.workers:4}") int workers) {
+        var executor = new SimpleAsyncTaskExecutor("user-import-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(workers);
+
+        return new StepBuilder("userImport", jobRepository)
+                .partitioner("userImport.worker", userImportPartitioner)
+                .step(userImportWorkerStep)
+                .gridSize(workers)
+                .taskExecutor(executor)
+                .build();
+    }
+
+    @Bean
+    public Step userImportWorkerStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                                     FlatFileItemReader<RegisterUser.Command> userImportReader, Validator validator,
+                                     UserBatchRepo userBatchRepo, AuditingCallback auditing,
+                                     @Value("${mi.users.import.chunk-size:1000}") int chunkSize,
+                                     @Value("${mi.users.import.skip-limit:1000}") int skipLimit) {
+        return new StepBuilder("userImport.worker", jobRepository)
+                .<RegisterUser.Command, User>chunk(chunkSize, transactionManager)
+                .reader(userImportReader)
+                .processor(validating(validator))
+                .writer(new InsertingWriter(userBatchRepo, auditing))
+                //Lines that can't even be parsed are skipped, anything else fails the execution to be restarted
+                .faultTolerant()
+                .skip(FlatFileParseException.class)
+                .skipLimit(skipLimit)
+                .build();
+    }
+
+    //One pass over the file to count rows, far cheaper than inserting them
+    @Bean
+    @StepScope
+    public Partitioner userImportPartitioner(@Value("#{jobParameters['" + FILE + "']}") String file) {
+        return gridSize -> {
+            var rows = countRows(Path.of(file));
+            var size = (rows + gridSize - 1) / gridSize;
+            var partitions = new HashMap<String, ExecutionContext>();
+
+            for (int i = 0; i < gridSize; i++) {
+                var partition = new ExecutionContext();
+                partition.putInt(FROM, Math.min(rows, i * size));
+                partition.putInt(TO, Math.min(rows, (i + 1) * size));
+                partitions.put("partition" + i, partition);
+            }
+            return partitions;
+        };
+    }
+
+    //Each partition skips the lines before its range without parsing them. On restart the saved position wins over FROM
+    @Bean
+    @StepScope
+    public FlatFileItemReader<RegisterUser.Command> userImportReader(ObjectMapper objectMapper,
+                                                                     @Value("#{jobParameters['" + FILE + "']}") String file,
+                                                                     @Value("#{stepExecutionContext['" + FROM + "']}") int from,
+                                                                     @Value("#{stepExecutionContext['" + TO + "']}") int to) {
+        var reader = new FlatFileItemReaderBuilder<RegisterUser.Command>()
+                .name("userImportReader")
+                .resource(new FileSystemResource(file))
+                .linesToSkip(isCsv(file) ? 1 : 0)
+                .lineMapper(isCsv(file) ? csv() : ndjson(objectMapper))
+                .build();
+        reader.setCurrentItemCount(from);
+        reader.setMaxItemCount(to);
+        return reader;
+    }
+
+    //Same rules as registerUser, invalid rows are filtered and counted instead of failing the chunk
+    private static ItemProcessor<RegisterUser.Command, User> validating(Validator validator) {
+        return command -> {
+            var violations = validator.validate(command);
+            if (!violations.isEmpty()) {
+                log.debug("Invalid user [{}]: {}", command.id(), violations.stream().map(v -> v.getPropertyPath() + " " + v.getMessage()).collect(joining(", ")));
+                return null;
+            }
+            return RegisterUser.toUser(command);
+        };
+    }
+
+    //Ids already present are left untouched, so rewriting a chunk after a restart is harmless.
+    //Audited once per chunk, the principal is the one of the chunk transaction.
+    //Shared by the partitions, the rows inserted are counted in the execution context of the step running the chunk
+    static class InsertingWriter implements ItemWriter<User>, StepExecutionListener {
+        static final String INSERTED = "inserted";
+
+        private final UserBatchRepo userBatchRepo;
+        private final AuditingCallback auditing;
+
+        InsertingWriter(UserBatchRepo userBatchRepo, AuditingCallback auditing) {
+            this.userBatchRepo = userBatchRepo;
+            this.auditing = auditing;
+        }
+
+        //A restart copies the context of the failed execution, its count is not this execution's
+        @Override
+        public void beforeStep(@NonNull StepExecution stepExecution) {
+            stepExecution.getExecutionContext().putLong(INSERTED, 0);
+        }
+
+        @Override
+        public void write(@NonNull Chunk<? extends User> chunk) {
+            var inserted = userBatchRepo.insertAll(auditing.auditAll(List.copyOf(chunk.getItems())));
+            var count = 0;
+            for (var row : inserted) {
+                if (row) {
+                    count++;
+                }
+            }
+            var context = StepSynchronizationManager.getContext().getStepExecution().getExecutionContext();
+            context.putLong(INSERTED, context.getLong(INSERTED, 0) + count);
+        }
+    }
+
+    private static LineMapper<RegisterUser.Command> csv() {
+        var tokenizer = new DelimitedLineTokenizer();
+        tokenizer.setNames(CSV_COLUMNS);
+
+        var lineMapper = new DefaultLineMapper<RegisterUser.Command>();
+        lineMapper.setLineTokenizer(tokenizer);
+        //Phone numbers separated by |
+        lineMapper.setFieldSetMapper(fields -> new RegisterUser.Command(
+                UUID.fromString(fields.readString("id")),
+                Optional.ofNullable(fields.readString("realname")).filter(StringUtils::hasText),
+                fields.readString("username"),
+                fields.readString("email"),
+                fields.readString("password"),
+                StringUtils.hasText(fields.readString("phoneNumbers")) ? Arrays.asList(fields.readString("phoneNumbers").split("\\|")) : List.of()
+        ));
+        return lineMapper;
+    }
+
+    private static LineMapper<RegisterUser.Command> ndjson(ObjectMapper objectMapper) {
+        return (line, lineNumber) -> objectMapper.readValue(line, Row.class).toCommand();
+    }
+
+    private static boolean isCsv(String file) {
+        return file.toLowerCase().endsWith(".csv");
+    }
+
+    private static int countRows(Path file) {
+        try (var lines = Files.lines(file)) {
+            var rows = lines.count();
+            return Math.toIntExact(isCsv(file.toString()) ? rows - 1 : rows);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Can't read " + file, ex);
+        }
+    }
+
+    //NDJSON line, realname and phoneNumbers may be missing
+    record Row(UUID id, String realname, String username, String email, String password, List<String> phoneNumbers) {
+        RegisterUser.Command toCommand() {
+            return new RegisterUser.Command(id, Optional.ofNullable(realname), username, email, password, phoneNumbers == null ? List.of() : phoneNumbers);
+        }
+    }
+}
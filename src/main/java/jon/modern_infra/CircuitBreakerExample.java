@@ -1,10 +1,18 @@
 package jon.modern_infra;
 
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import jon.modern_infra.common.resilience.AdaptiveConcurrencyLimiter;
+import jon.modern_infra.common.resilience.FallbackCache;
+import jon.modern_infra.common.resilience.HedgedExecutor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.RestTemplate;
@@ -14,6 +22,7 @@ import org.springframework.web.client.RestTemplate;
 @RequiredArgsConstructor
 class CircuitBreakerExample {
     private final PaymentService paymentService;
+    private final FallbackCache<String, String> paymentStatusFallbackCache;
 
     @GetMapping("/processPayment")
     @CircuitBreaker(name = "processPayment", fallbackMethod = "fallbackMethod")
@@ -25,6 +34,22 @@ class CircuitBreakerExample {
         //Worst example of fallback, a good fallback would be using an alternative payment API
         return "Lo sentimos, actualmente estamos experimentando dificultades técnicas para procesar pagos en línea. Por favor, inténtalo de nuevo más tarde. Agradecemos tu paciencia y comprensión.";
     }
+
+    //Idempotent read, every good answer is kept to be served while the breaker is not CLOSED
+    @GetMapping("/payments/{paymentId}/status")
+    @CircuitBreaker(name = "paymentStatus", fallbackMethod = "paymentStatusFallback")
+    public ResponseEntity<String> paymentStatus(@PathVariable String paymentId) throws Exception {
+        return ResponseEntity.ok(paymentStatusFallbackCache.record(paymentId, paymentService.paymentStatus(paymentId)));
+    }
+
+    public ResponseEntity<String> paymentStatusFallback(String paymentId, Throwable throwable) {
+        return paymentStatusFallbackCache.lastKnownGood(paymentId)
+                .map(stale -> ResponseEntity.ok()
+                        .header(HttpHeaders.AGE, String.valueOf(stale.age().toSeconds()))
+                        .header(HttpHeaders.WARNING, "110 - \"Response is Stale\"")
+                        .body(stale.value()))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(fallbackMethod(throwable)));
+    }
 }
 
 @Component
@@ -32,9 +57,12 @@ class CircuitBreakerExample {
 class PaymentManager {
     private final RestTemplate restTemplate;
 
+    @Value("${mi.payments.url:https://www.google.com}")
+    private String paymentsUrl;
+
     public String processPayment() throws Exception {
         try {
-            restTemplate.getForEntity("https://www.google.com", String.class);
+            restTemplate.getForEntity(paymentsUrl, String.class);
 
             var random = Math.random();
 
@@ -47,14 +75,33 @@ class PaymentManager {
             throw ex;
         }
     }
+
+    public String paymentStatus(String paymentId) throws Exception {
+        restTemplate.getForEntity(paymentsUrl, String.class);
+
+        if (Math.random() > 0.5) {
+            throw new Exception("Error consultando el pago " + paymentId);
+        }
+
+        return "Pago " + paymentId + " procesado";
+    }
 }
 
 @Service
 @RequiredArgsConstructor
 class PaymentService {
     private final PaymentManager paymentManager;
+    private final AdaptiveConcurrencyLimiter paymentLimiter;
+    private final HedgedExecutor paymentHedger;
 
+    //Over the limit it fails fast with LimitExceededException, which ends in the circuit breaker fallback.
+    //Never hedged, a second attempt would be a second charge
     public String processPayment() throws Exception{
-        return paymentManager.processPayment();
+        return paymentLimiter.call(paymentManager::processPayment);
+    }
+
+    //Idempotent, safe to hedge. Each hedged attempt takes its own permit
+    public String paymentStatus(String paymentId) throws Exception {
+        return paymentHedger.call(() -> paymentLimiter.call(() -> paymentManager.paymentStatus(paymentId)));
     }
 }
\ No newline at end of file
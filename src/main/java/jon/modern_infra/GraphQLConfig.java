@@ -0,0 +1,426 @@
+package jon.modern_infra;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.analysis.MaxQueryComplexityInstrumentation;
+import graphql.analysis.MaxQueryDepthInstrumentation;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.fieldvalidation.FieldValidationInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.execution.preparsed.persisted.PersistedQueryIdInvalid;
+import graphql.execution.preparsed.persisted.PersistedQueryNotFound;
+import graphql.language.Field;
+import graphql.language.OperationDefinition;
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jon.modern_infra.common.store.SqlStatementCounter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.graphql.GraphQlSourceBuilderCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static graphql.execution.preparsed.persisted.PersistedQuerySupport.PERSISTED_QUERY_MARKER;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+
+@Configuration
+class GraphQLConfig {
+    private static final Set<String> PAGE_SIZE_ARGUMENTS = Set.of("first", "last");
+
+    @Bean
+    SqlStatementsPerOperation sqlStatementsPerOperation(MeterRegistry meterRegistry) {
+        return new SqlStatementsPerOperation(meterRegistry);
+    }
+
+    @Bean
+    MaxQueryDepthInstrumentation maxQueryDepth(@Value("${mi.graphql.max-depth:10}") int maxDepth) {
+        return new MaxQueryDepthInstrumentation(maxDepth);
+    }
+
+    //Paginated fields cost their children once per requested item, users(first: 100) is 100 times its selection.
+    //Forward (first) and backward (last) pages cost the same, a page without either is the default size
+    @Bean
+    MaxQueryComplexityInstrumentation maxQueryComplexity(@Value("${mi.graphql.max-complexity:2000}") int maxComplexity) {
+        return new MaxQueryComplexityInstrumentation(maxComplexity, (environment, childComplexity) -> {
+            if (environment.getFieldDefinition().getArguments().stream().noneMatch(argument -> PAGE_SIZE_ARGUMENTS.contains(argument.getName()))) {
+                return 1 + childComplexity;
+            }
+            var arguments = environment.getArguments();
+            var size = arguments.get("first") instanceof Integer first ? first
+                    : arguments.get("last") instanceof Integer last ? last
+                    : GraphQLExample.DEFAULT_PAGE_SIZE;
+            //Negative sizes are rejected by pageSizeValidation, never let one cancel the cost of a sibling
+            return 1 + childComplexity * Math.clamp(size, 0, GraphQLExample.MAX_PAGE_SIZE);
+        });
+    }
+
+    //Before execution, a negative first or last on any field, aliased or not, fails the whole request
+    @Bean
+    FieldValidationInstrumentation pageSizeValidation() {
+        return new FieldValidationInstrumentation(environment -> environment.getFields().stream()
+                .flatMap(field -> PAGE_SIZE_ARGUMENTS.stream()
+                        .filter(argument -> field.<Object>getArgumentValue(argument) instanceof Integer size && size < 0)
+                        .map(argument -> environment.mkError("Argument '" + argument + "' must not be negative", field)))
+                .toList());
+    }
+
+    @Bean
+    GraphQlSourceBuilderCustomizer persistedDocumentsCustomizer(@Value("${mi.graphql.documents.cache.enabled:true}") boolean enabled,
+                                                               @Value("${mi.graphql.documents.cache.maximum-size:1000}") long maximumSize,
+                                                               MeterRegistry meterRegistry) {
+        if (!enabled) {
+            return builder -> {
+            };
+        }
+        var documents = new PersistedDocuments(maximumSize, meterRegistry);
+        return builder -> builder.configureGraphQl(graphQl -> graphQl.preparsedDocumentProvider(documents));
+    }
+
+    @Bean
+    FilterRegistrationBean<PersistedQueryRequestFilter> persistedQueryRequestFilter(@Value("${spring.graphql.path:/graphql}") String path,
+                                                                                   ObjectMapper objectMapper) {
+        var registration = new FilterRegistrationBean<>(new PersistedQueryRequestFilter(objectMapper));
+        registration.addUrlPatterns(path);
+        return registration;
+    }
+
+    //Records how many SQL statements each GraphQL operation needed, a jump here usually means a new N+1
+    static class SqlStatementsPerOperation extends SimplePerformantInstrumentation {
+        private final MeterRegistry meterRegistry;
+
+        SqlStatementsPerOperation(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            ContextRegistry.getInstance().registerThreadLocalAccessor(new SqlStatementCounter.Accessor());
+        }
+
+        @Override
+        public InstrumentationContext<ExecutionResult> beginExecution(InstrumentationExecutionParameters parameters, InstrumentationState state) {
+            //Data fetchers and batch loaders restore thread locals from the GraphQLContext, wherever they run
+            parameters.getGraphQLContext().put(SqlStatementCounter.CONTEXT_KEY, new AtomicInteger());
+            return SimpleInstrumentationContext.noOp();
+        }
+
+        @Override
+        public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters, InstrumentationState state) {
+            var context = parameters.getExecutionContext();
+            AtomicInteger counter = context.getGraphQLContext().get(SqlStatementCounter.CONTEXT_KEY);
+            var operation = operation(context.getOperationDefinition());
+
+            return SimpleInstrumentationContext.whenCompleted((result, throwable) -> {
+                DistributionSummary.builder("graphql.operation.sql.statements")
+                        .description("SQL statements executed per GraphQL operation")
+                        .tag("operation", operation)
+                        .register(meterRegistry)
+                        .record(counter.get());
+            });
+        }
+
+        //Operation type and top-level fields, e.g. "query users". Both come from the schema, the operation name
+        //comes from the client and would let it create any number of series
+        static String operation(OperationDefinition definition) {
+            var fields = definition.getSelectionSet().getSelections().stream()
+                    .filter(Field.class::isInstance)
+                    .map(selection -> ((Field) selection).getName())
+                    .distinct()
+                    .sorted()
+                    .collect(joining(","));
+            return definition.getOperation().name().toLowerCase() + " " + (fields.isEmpty() ? "fragments" : fields);
+        }
+    }
+
+    //Parsed and validated documents by the SHA-256 of their text, so each distinct query is parsed once.
+    //Automatic persisted queries share the same entries: clients send extensions.persistedQuery.sha256Hash alone and,
+    //on PersistedQueryNotFound, again with the full text. Invalid documents are cached too, with their errors
+    static class PersistedDocuments implements PreparsedDocumentProvider {
+        private final Cache<String, PreparsedDocumentEntry> cache;
+        private final Counter notFound;
+
+        PersistedDocuments(long maximumSize, MeterRegistry meterRegistry) {
+            this.cache = Caffeine.newBuilder()
+                    .maximumSize(maximumSize)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "graphql.documents");
+            this.notFound = Counter.builder("graphql.persisted.queries.not.found")
+                    .description("Persisted query hashes sent without their text and not in the cache")
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public CompletableFuture<PreparsedDocumentEntry> getDocumentAsync(ExecutionInput executionInput, Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+            var query = executionInput.getQuery();
+            var persistedHash = persistedHash(executionInput);
+
+            if (persistedHash == null) {
+                return CompletableFuture.completedFuture(cache.get(sha256(query), hash -> parseAndValidateFunction.apply(executionInput)));
+            }
+            if (!StringUtils.hasText(query) || PERSISTED_QUERY_MARKER.equals(query)) {
+                var entry = cache.getIfPresent(persistedHash);
+                if (entry == null) {
+                    notFound.increment();
+                    return CompletableFuture.completedFuture(new PreparsedDocumentEntry(new PersistedQueryNotFound(persistedHash)));
+                }
+                return CompletableFuture.completedFuture(entry);
+            }
+            //A hash that doesn't match its text would poison the entry for every other client
+            if (!persistedHash.equals(sha256(query))) {
+                return CompletableFuture.completedFuture(new PreparsedDocumentEntry(new PersistedQueryIdInvalid(persistedHash)));
+            }
+            return CompletableFuture.completedFuture(cache.get(persistedHash, hash -> parseAndValidateFunction.apply(executionInput)));
+        }
+
+        @Nullable
+        private static String persistedHash(ExecutionInput executionInput) {
+            var extensions = executionInput.getExtensions();
+            if (extensions != null && extensions.get("persistedQuery") instanceof Map<?, ?> persistedQuery
+                    && persistedQuery.get("sha256Hash") instanceof String hash) {
+                return hash.toLowerCase();
+            }
+            return null;
+        }
+
+        static String sha256(String query) {
+            try {
+                return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(query.getBytes(UTF_8)));
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+    //Spring GraphQL rejects a request without "query" before graphql-java sees it, but an automatic persisted query
+    //sends only extensions.persistedQuery. Such bodies get graphql-java's marker as query, PersistedDocuments resolves
+    //the hash instead. The top-level fields are scanned with a streaming parser that stops at "query", so plain queries
+    //are not parsed twice: only the bytes the parser read ahead are kept, then replayed before the rest of the stream
+    static class PersistedQueryRequestFilter extends OncePerRequestFilter {
+        private final ObjectMapper objectMapper;
+
+        PersistedQueryRequestFilter(ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull FilterChain chain) throws ServletException, IOException {
+            if (!HttpMethod.POST.matches(request.getMethod())) {
+                chain.doFilter(request, response);
+                return;
+            }
+            var body = request.getInputStream();
+            var readAhead = new ByteArrayOutputStream();
+            var recorded = new FilterInputStream(body) {
+                @Override
+                public int read() throws IOException {
+                    var b = super.read();
+                    if (b >= 0) {
+                        readAhead.write(b);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(@NonNull byte[] b, int off, int len) throws IOException {
+                    var n = super.read(b, off, len);
+                    if (n > 0) {
+                        readAhead.write(b, off, n);
+                    }
+                    return n;
+                }
+
+                //Spring GraphQL still has to read the rest
+                @Override
+                public void close() {
+                }
+            };
+
+            boolean hasQuery;
+            try (var parser = objectMapper.createParser(recorded)) {
+                hasQuery = hasQuery(parser);
+            } catch (JsonProcessingException invalid) {
+                //Not ours to answer, Spring GraphQL replies 400
+                hasQuery = true;
+            }
+
+            var head = readAhead.toByteArray();
+            if (hasQuery) {
+                chain.doFilter(new BodyRequest(request, head, body, -1), response);
+                return;
+            }
+            //The scan went through the whole document, it is all in head
+            var rewritten = withMarker(head);
+            chain.doFilter(new BodyRequest(request, rewritten, body, rewritten == head ? -1 : rewritten.length), response);
+        }
+
+        //True unless the top-level object ends without a "query" with text
+        static boolean hasQuery(JsonParser parser) throws IOException {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return true;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var name = parser.currentName();
+                var value = parser.nextToken();
+                if ("query".equals(name) && value == JsonToken.VALUE_STRING && StringUtils.hasText(parser.getText())) {
+                    return true;
+                }
+                parser.skipChildren();
+            }
+            return false;
+        }
+
+        byte[] withMarker(byte[] body) throws IOException {
+            Map<String, Object> document;
+            try {
+                document = objectMapper.readValue(body, new TypeReference<>() {
+                });
+            } catch (IOException ex) {
+                return body;
+            }
+            if (document == null || !(document.get("extensions") instanceof Map<?, ?> extensions) || !extensions.containsKey("persistedQuery")) {
+                return body;
+            }
+            document.put("query", PERSISTED_QUERY_MARKER);
+            return objectMapper.writeValueAsBytes(document);
+        }
+    }
+
+    //Replays the bytes already read, then the rest of the original stream. Content length is only overridden when the
+    //body was rewritten
+    static class BodyRequest extends HttpServletRequestWrapper {
+        private final ReplayedInputStream body;
+        private final long contentLength;
+
+        BodyRequest(HttpServletRequest request, byte[] head, ServletInputStream rest, long contentLength) {
+            super(request);
+            this.body = new ReplayedInputStream(head, rest);
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return body;
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(body, getCharacterEncoding() == null ? UTF_8 : Charset.forName(getCharacterEncoding())));
+        }
+
+        @Override
+        public int getContentLength() {
+            return contentLength < 0 ? super.getContentLength() : (int) contentLength;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return contentLength < 0 ? super.getContentLengthLong() : contentLength;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return contentLength >= 0 && HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name) ? String.valueOf(contentLength) : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return contentLength >= 0 && HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name) ? Collections.enumeration(List.of(String.valueOf(contentLength))) : super.getHeaders(name);
+        }
+    }
+
+    static class ReplayedInputStream extends ServletInputStream {
+        private final byte[] head;
+        private final ServletInputStream rest;
+        private int position;
+
+        ReplayedInputStream(byte[] head, ServletInputStream rest) {
+            this.head = head;
+            this.rest = rest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return position < head.length ? head[position++] & 0xff : rest.read();
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (position < head.length) {
+                var n = Math.min(len, head.length - position);
+                System.arraycopy(head, position, b, off, n);
+                position += n;
+                return n;
+            }
+            return rest.read(b, off, len);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return position == head.length && rest.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return position < head.length || rest.isReady();
+        }
+
+        //Everything left is already in memory when the original stream is finished, otherwise the container signals the rest
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            if (!rest.isFinished()) {
+                rest.setReadListener(readListener);
+                return;
+            }
+            try {
+                readListener.onDataAvailable();
+                readListener.onAllDataRead();
+            } catch (IOException ex) {
+                readListener.onError(ex);
+            }
+        }
+    }
+}
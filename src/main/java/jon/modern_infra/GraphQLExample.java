@@ -1,15 +1,31 @@
 package jon.modern_infra;
 
+import graphql.GraphQLError;
 import io.micrometer.observation.annotation.Observed;
 import io.swagger.v3.oas.annotations.Operation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jon.modern_infra.common.store.AuditingCallback;
+import jon.modern_infra.common.store.Role;
+import jon.modern_infra.common.store.RoleCache;
 import jon.modern_infra.common.store.User;
+import jon.modern_infra.common.store.UserBatchRepo;
 import jon.modern_infra.common.store.UserRepo;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.BatchMapping;
+import org.springframework.graphql.data.method.annotation.GraphQlExceptionHandler;
 import org.springframework.graphql.data.method.annotation.MutationMapping;
 import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.graphql.data.method.annotation.SchemaMapping;
+import org.springframework.graphql.data.query.ScrollSubrange;
+import org.springframework.graphql.execution.ErrorType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.stereotype.Service;
@@ -19,26 +35,36 @@ import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.Serial;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 
 import static java.lang.String.format;
-import static jon.modern_infra.help.TraceIdGenerator.generateTraceId;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 
 @Controller
 @RequiredArgsConstructor
 @Slf4j
 class GraphQLExample {
+    static final int DEFAULT_PAGE_SIZE = 20;
+    static final int MAX_PAGE_SIZE = 100;
+
     private final RegisterUser registerUser;
     private final UserRepo userRepo;
+    private final RoleCache roleCache;
 
     @Observed(name = "registerUser")
     @Operation(summary = "Register a new user")
     @MutationMapping
     public ResponseEntity<User> registerUser(@Argument RegisterUser.Command message) {
-        generateTraceId();
-
         log.info("BEGIN registerUser for userId: {}", message.id());
         var userId = registerUser.handle(message);
         var user = userRepo.findByIdOrElseThrow(userId);
@@ -48,14 +74,63 @@ class GraphQLExample {
         return ResponseEntity.created(location).body(user);
     }
 
+    @Observed(name = "registerUsers")
+    @MutationMapping
+    public List<RegisterUser.Result> registerUsers(@Argument List<RegisterUser.Command> input) {
+        log.info("BEGIN registerUsers for {} users", input.size());
+        var results = registerUser.handleAll(input);
+        log.info("END registerUsers for {} users", input.size());
+
+        return results;
+    }
+
     @QueryMapping
     public User userById(@Argument String id) {
         return userRepo.findByIdOrElseThrow(UUID.fromString(id));
     }
 
     @QueryMapping
-    public Iterable<User> users() {
-        return userRepo.findAll();
+    public Window<User> users(ScrollSubrange subrange) {
+        var requested = subrange.count().orElse(DEFAULT_PAGE_SIZE);
+        //Would reach Postgres as a negative LIMIT and come back as an internal error
+        if (requested < 0) {
+            throw new IllegalArgumentException("Argument 'first' must not be negative");
+        }
+        var size = Math.min(requested, MAX_PAGE_SIZE);
+        var after = subrange.position()
+                .filter(KeysetScrollPosition.class::isInstance)
+                .map(position -> ((KeysetScrollPosition) position).getKeys().get(UserRepo.CURSOR_KEY))
+                .map(key -> key instanceof UUID uuid ? uuid : UUID.fromString(key.toString()))
+                .orElse(null);
+
+        return userRepo.scroll(after, size);
+    }
+
+    //One lookup for the distinct role codes of the whole selection instead of one per user
+    @BatchMapping(typeName = "User", field = "role")
+    public Map<User, Role> role(List<User> users) {
+        var codes = users.stream().map(User::roleCode).filter(Objects::nonNull).collect(toSet());
+        var roles = roleCache.findAllByCode(codes);
+
+        return users.stream()
+                .filter(user -> roles.containsKey(user.roleCode()))
+                .collect(toMap(identity(), user -> roles.get(user.roleCode()), (first, duplicate) -> first));
+    }
+
+    @SchemaMapping(typeName = "Role", field = "code")
+    public String roleCode(Role role) {
+        return role.role_code();
+    }
+
+    @SchemaMapping(typeName = "Role", field = "name")
+    public String roleName(Role role) {
+        return role.description();
+    }
+
+    //Bad arguments are the client's fault, they are reported as such instead of INTERNAL_ERROR
+    @GraphQlExceptionHandler
+    public GraphQLError badArgument(IllegalArgumentException ex) {
+        return GraphQLError.newError().errorType(ErrorType.BAD_REQUEST).message(ex.getMessage()).build();
     }
 }
 
@@ -66,16 +141,66 @@ class GraphQLExample {
 @Transactional
 class RegisterUser {
     private final UserRepo repository;
+    private final UserBatchRepo batchRepository;
+    private final Validator validator;
+    private final ApplicationEventPublisher events;
+    private final AuditingCallback auditing;
 
     public UUID handle(final @Valid RegisterUser.Command command) {
         log.info("BEGIN RegisterUser");
 
-        repository.findById(command.id()).ifPresent(user -> {
-            throw new UserAlreadyExistsException(format("User [%s] already exists", command.id()));
-        });
+        var user = auditing.audit(toUser(command));
+        var userId = repository.registerUserIfAbsent(user)
+                .orElseThrow(() -> new UserAlreadyExistsException(format("User [%s] already exists", command.id())));
+        //Same transaction as the insert, Kafka is only reached after commit
+        events.publishEvent(UserRegistered.of(user));
 
+        log.info("END RegisterUser");
+        return userId;
+    }
+
+    //Same rules as handle, but one existence query and one JDBC batch for the whole list. Failures are reported per item
+    public List<Result> handleAll(final List<RegisterUser.Command> commands) {
+        log.info("BEGIN RegisterUsers for {} users", commands.size());
+
+        var results = new Result[commands.size()];
+        var existingIds = batchRepository.findExistingIds(commands.stream().map(Command::id).filter(Objects::nonNull).toList());
+        var seenIds = new HashSet<UUID>();
+        var users = new ArrayList<User>();
+        var positions = new ArrayList<Integer>();
+
+        for (int i = 0; i < commands.size(); i++) {
+            var command = commands.get(i);
+            var violations = validator.validate(command);
+
+            if (!violations.isEmpty()) {
+                results[i] = Result.failed(command.id(), violations.stream().map(v -> v.getPropertyPath() + " " + v.getMessage()).collect(joining(", ")));
+            } else if (existingIds.contains(command.id()) || !seenIds.add(command.id())) {
+                results[i] = Result.failed(command.id(), format("User [%s] already exists", command.id()));
+            } else {
+                users.add(toUser(command));
+                positions.add(i);
+            }
+        }
+
+        //One principal lookup for the whole list, not one per row
+        var audited = auditing.auditAll(users);
+        var inserted = batchRepository.insertAll(audited);
+        for (int i = 0; i < inserted.length; i++) {
+            var id = audited.get(i).id();
+            results[positions.get(i)] = inserted[i] ? Result.registered(id) : Result.failed(id, format("User [%s] already exists", id));
+            if (inserted[i]) {
+                events.publishEvent(UserRegistered.of(audited.get(i)));
+            }
+        }
+
+        log.info("END RegisterUsers, {} registered", users.size());
+        return Arrays.asList(results);
+    }
+
+    static User toUser(RegisterUser.Command command) {
         //Complex logic to decide the user
-        var user = User.Factory.register(
+        return User.Factory.register(
                 command.id(),
                 User.RealName.of(command.realname().orElse("")),
                 User.UserName.of(command.username()),
@@ -83,10 +208,6 @@ class RegisterUser {
                 User.Password.of(command.password()),
                 User.PhoneNumbers.of(command.phoneNumbers())
         );
-        repository.registerUser(user);
-
-        log.info("END RegisterUser");
-        return user.id();
     }
 
     private static class UserAlreadyExistsException extends RuntimeException {
@@ -97,6 +218,16 @@ class RegisterUser {
         }
     }
 
-    public record Command(UUID id, Optional<String> realname, String username, String email, String password, List<String> phoneNumbers) {
+    public record Command(@NotNull UUID id, Optional<String> realname, @NotBlank String username, @NotBlank String email, @NotBlank String password, List<String> phoneNumbers) {
+    }
+
+    public record Result(UUID id, boolean registered, String error) {
+        static Result registered(UUID id) {
+            return new Result(id, true, null);
+        }
+
+        static Result failed(UUID id, String error) {
+            return new Result(id, false, error);
+        }
     }
-}
\ No newline at end of file
+}
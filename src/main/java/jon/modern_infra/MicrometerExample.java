@@ -8,38 +8,51 @@ import io.micrometer.observation.annotation.Observed;
 import io.swagger.v3.oas.annotations.Operation;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
-import lombok.RequiredArgsConstructor;
+import jon.modern_infra.help.BoundedTagValues;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 
 @RestController
 @RequestMapping("/micrometer")
-@RequiredArgsConstructor
 @Slf4j
 class MicrometerExample {
     private final ObservationRegistry registry;
+    private final BalanceEngine balanceEngine;
+    private final BoundedTagValues accountPrefixes;
+
+    MicrometerExample(ObservationRegistry registry, BalanceEngine balanceEngine,
+                      @Value("${mi.metrics.max-values-per-tag:100}") int maxValuesPerTag) {
+        this.registry = registry;
+        this.balanceEngine = balanceEngine;
+        this.accountPrefixes = new BoundedTagValues(maxValuesPerTag);
+    }
 
     @GetMapping(path = "/{accountNumber}/balance")
     public ResponseEntity<BigDecimal> getBalance(@PathVariable String accountNumber) {
         Assert.state(StringUtils.hasText(accountNumber), "Account number is required");
 
         //Fine-grained Observation instead of @Observed
-        String prefix = accountNumber.split("-")[0];
+        //Bounded and allocation free, unexpected account numbers end up as OTHER instead of new series
+        String prefix = accountPrefixes.prefix(accountNumber, '-');
         var observation = Observation
                 .createNotStarted("get-balance", registry)
                 .lowCardinalityKeyValue("accountPrefix", prefix)
                 .contextualName("getBalance");
 
         log.info("BEGIN getBalance for accountNumber: {}", accountNumber);
-        var balance = observation.observe(() -> getBalance());
+        var balance = observation.observe(() -> balanceEngine.balance(accountNumber));
         log.info("END getBalance for accountNumber: {}", accountNumber);
 
         return ResponseEntity.ok(balance);
@@ -51,14 +64,25 @@ class MicrometerExample {
         Assert.state(StringUtils.hasText(accountNumber), "Account number is required");
 
         log.info("BEGIN getBalance for accountNumber: {}", accountNumber);
-        var balance = getBalance();
+        var balance = balanceEngine.balanceAt(accountNumber, LocalDate.now().withDayOfYear(1));
         log.info("END getBalance for accountNumber: {}", accountNumber);
 
         return ResponseEntity.ok(balance);
     }
 
-    BigDecimal getBalance(){
-        return BigDecimal.ZERO;
+    @PostMapping(path = "/{accountNumber}/movements")
+    public ResponseEntity<Void> addMovement(@PathVariable String accountNumber, @RequestBody Movement movement) {
+        Assert.state(StringUtils.hasText(accountNumber), "Account number is required");
+        Assert.state(movement.amount() != null, "Amount is required");
+        if (!BalanceEngine.hasValidScale(movement.amount())) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        balanceEngine.apply(accountNumber, movement.date() == null ? LocalDate.now() : movement.date(), movement.amount());
+        return ResponseEntity.accepted().build();
+    }
+
+    record Movement(BigDecimal amount, LocalDate date) {
     }
 }
 
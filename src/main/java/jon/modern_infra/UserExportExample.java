@@ -0,0 +1,123 @@
+package jon.modern_infra;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+//Whole mi.users as NDJSON, one user per line, gzip when the client accepts it. Passwords are never exported.
+//Postgres only streams with a cursor inside a transaction and with a fetch size, otherwise the driver reads the
+//whole result before the first row. Each row is written as it is read: when the client is slow the socket write
+//blocks this (virtual) thread, and with it the next fetch, so memory stays at fetch-size rows whatever the table size
+@RestController
+@RequestMapping("/users")
+@Slf4j
+class UserExportExample {
+    static final String NDJSON = "application/x-ndjson";
+    private static final String SELECT = """
+            SELECT user_id, realname, username, email, phone_numbers, role_code, created_by, created_at, modified_by, modified_at, deleted
+            FROM mi.users
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnly;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    UserExportExample(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                      @Value("${mi.users.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+    }
+
+    //Written to the response directly, no async dispatch so the export isn't cut by the async request timeout
+    @GetMapping(path = "/export", produces = NDJSON)
+    public void export(@Nullable @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                       HttpServletResponse response) throws IOException {
+        var gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        response.setContentType(NDJSON);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.ndjson\"");
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        var start = System.nanoTime();
+        var rows = new long[1];
+        try (OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), 64 * 1024) : response.getOutputStream();
+             var json = objectMapper.getFactory().createGenerator(out)) {
+            //One object per line instead of the default space between root values
+            json.setRootValueSeparator(null);
+
+            readOnly.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                var statement = connection.prepareStatement(SELECT, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(fetchSize);
+                return statement;
+            }, (RowCallbackHandler) rs -> {
+                try {
+                    write(json, rs);
+                } catch (IOException ex) {
+                    //Client gone, closing the cursor ends the query
+                    throw new UncheckedIOException(ex);
+                }
+                rows[0]++;
+            }));
+        }
+
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+        log.info("Exported {} users in {} ms ({} rows/s, gzip {})", rows[0], elapsed.toMillis(),
+                elapsed.isZero() ? rows[0] : rows[0] * 1_000_000_000L / elapsed.toNanos(), gzip);
+    }
+
+    private static void write(JsonGenerator json, ResultSet rs) throws SQLException, IOException {
+        json.writeStartObject();
+        json.writeStringField("id", rs.getObject("user_id", UUID.class).toString());
+        json.writeStringField("realname", rs.getString("realname"));
+        json.writeStringField("username", rs.getString("username"));
+        json.writeStringField("email", rs.getString("email"));
+        json.writeFieldName("phoneNumbers");
+        var phoneNumbers = rs.getArray("phone_numbers");
+        if (phoneNumbers == null) {
+            json.writeNull();
+        } else {
+            var numbers = (String[]) phoneNumbers.getArray();
+            json.writeArray(numbers, 0, numbers.length);
+        }
+        json.writeStringField("roleCode", rs.getString("role_code"));
+        json.writeStringField("createdBy", rs.getString("created_by"));
+        json.writeStringField("createdAt", timestamp(rs.getTimestamp("created_at")));
+        json.writeStringField("modifiedBy", rs.getString("modified_by"));
+        json.writeStringField("modifiedAt", timestamp(rs.getTimestamp("modified_at")));
+        json.writeBooleanField("deleted", rs.getBoolean("deleted"));
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    @Nullable
+    private static String timestamp(@Nullable Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime().toString();
+    }
+}
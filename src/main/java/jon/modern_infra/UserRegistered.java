@@ -0,0 +1,18 @@
+package jon.modern_infra;
+
+import jon.modern_infra.common.store.User;
+import org.springframework.modulith.events.Externalized;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+//Stored in the event publication registry in the registration transaction, relayed to Kafka after commit.
+//Keyed by user id so all the events of a user land in the same partition, in order
+@Externalized(UserRegistered.TOPIC + "::#{id()}")
+public record UserRegistered(UUID id, String username, String email, LocalDateTime registeredAt) {
+    public static final String TOPIC = "users.registered";
+
+    static UserRegistered of(User user) {
+        return new UserRegistered(user.id(), user.username().username(), user.email().email(), user.createdAt());
+    }
+}
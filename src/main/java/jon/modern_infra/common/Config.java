@@ -1,13 +1,117 @@
 package jon.modern_infra.common;
 
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import jon.modern_infra.common.resilience.AdaptiveConcurrencyLimiter;
+import jon.modern_infra.common.resilience.FallbackCache;
+import jon.modern_infra.common.resilience.HedgedExecutor;
+import jon.modern_infra.common.resilience.RetryBudget;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Clock;
+import java.time.Duration;
+
 @Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
 class Config {
+    //The builder adds the http.client.requests observation
+    @Bean
+    public RestTemplate restTemplate(RestTemplateBuilder builder, ClientHttpRequestFactory httpRequestFactory) {
+        return builder.requestFactory(() -> httpRequestFactory).build();
+    }
+
+    //Keep-alive pool instead of the default SimpleClientHttpRequestFactory, that has no timeouts and a new connection per call
+    @Bean
+    public ClientHttpRequestFactory httpRequestFactory(HttpClientProperties properties, MeterRegistry meterRegistry) {
+        if (properties.http2()) {
+            var factory = new JdkClientHttpRequestFactory(HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(properties.connectTimeout())
+                    .build());
+            factory.setReadTimeout(properties.readTimeout());
+            return factory;
+        }
+
+        var connectionManager = connectionManager(properties);
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "default").bindTo(meterRegistry);
+
+        var httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(properties.poolTimeout()))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(properties.idleTimeout()))
+                .build();
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimiter paymentLimiter(@Value("${mi.payments.limiter.initial-limit:20}") int initialLimit,
+                                                     @Value("${mi.payments.limiter.min-limit:1}") int minLimit,
+                                                     @Value("${mi.payments.limiter.max-limit:200}") int maxLimit,
+                                                     @Value("${mi.payments.limiter.tolerance:2.0}") double tolerance,
+                                                     @Value("${mi.payments.limiter.backoff-ratio:0.9}") double backoffRatio) {
+        return new AdaptiveConcurrencyLimiter("payments", initialLimit, minLimit, maxLimit, tolerance, backoffRatio);
+    }
+
+    @Bean
+    public HedgedExecutor paymentHedger(@Value("${mi.payments.hedging.enabled:false}") boolean enabled,
+                                        @Value("${mi.payments.hedging.percentile:0.95}") double percentile,
+                                        @Value("${mi.payments.hedging.min-delay:10ms}") Duration minDelay,
+                                        @Value("${mi.payments.hedging.budget.ratio:0.1}") double budgetRatio,
+                                        @Value("${mi.payments.hedging.budget.max-tokens:20}") int budgetMaxTokens) {
+        return new HedgedExecutor("payments", enabled, percentile, minDelay, new RetryBudget(budgetRatio, budgetMaxTokens));
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public FallbackCache<String, String> paymentStatusFallbackCache(CircuitBreakerRegistry circuitBreakerRegistry,
+                                                                    @Value("${mi.payments.status.fallback-cache.maximum-size:10000}") long maximumSize,
+                                                                    @Value("${mi.payments.status.fallback-cache.ttl:1h}") Duration ttl) {
+        return new FallbackCache<>(circuitBreakerRegistry.circuitBreaker("paymentStatus"), maximumSize, ttl, Clock.systemUTC());
+    }
+
+    private static PoolingHttpClientConnectionManager connectionManager(HttpClientProperties properties) {
+        var connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(properties.maxTotal())
+                .setMaxConnPerRoute(properties.maxPerRoute())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(properties.connectTimeout()))
+                        .setSocketTimeout(Timeout.of(properties.readTimeout()))
+                        .setTimeToLive(TimeValue.of(properties.timeToLive()))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+
+        properties.routes().forEach((target, max) -> connectionManager.setMaxPerRoute(route(target), max));
+        return connectionManager;
+    }
+
+    //Same shape as the routes the client plans, explicit port and secure flag, otherwise the override never matches
+    private static HttpRoute route(String target) {
+        var host = HttpHost.create(URI.create(target));
+        var secure = "https".equalsIgnoreCase(host.getSchemeName());
+        var port = host.getPort() > 0 ? host.getPort() : (secure ? 443 : 80);
+        return new HttpRoute(new HttpHost(host.getSchemeName(), host.getHostName(), port), null, secure);
     }
 }
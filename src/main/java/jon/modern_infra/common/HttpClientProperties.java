@@ -0,0 +1,24 @@
+package jon.modern_infra.common;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+@ConfigurationProperties("mi.http.client")
+record HttpClientProperties(
+        @DefaultValue("200") int maxTotal,
+        @DefaultValue("50") int maxPerRoute,
+        //Per route overrides of maxPerRoute, keyed by scheme://host[:port]
+        @DefaultValue Map<String, Integer> routes,
+        @DefaultValue("2s") Duration connectTimeout,
+        @DefaultValue("5s") Duration readTimeout,
+        //Max wait for a free connection of the pool
+        @DefaultValue("1s") Duration poolTimeout,
+        @DefaultValue("30s") Duration idleTimeout,
+        @DefaultValue("5m") Duration timeToLive,
+        //JDK HttpClient with HTTP/2, it keeps its own pool so there are no pool metrics
+        @DefaultValue("false") boolean http2
+) {
+}
@@ -0,0 +1,127 @@
+package jon.modern_infra.common.resilience;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.lang.NonNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.String.format;
+
+//AIMD limit driven by latency, Vegas style: while calls are as fast as the best recent one the limit grows by one,
+//when they get slower than noLoadRtt * tolerance the downstream is queueing and the limit is cut.
+//Calls over the limit are rejected at once instead of piling up blocked (virtual) threads.
+//Only successful calls feed the RTT baseline, a burst of fast failures (connection refused...) would drag it down and
+//make every normal call look slow. Failures cut the limit instead.
+public class AdaptiveConcurrencyLimiter implements MeterBinder {
+    private static final int RTT_RESET_SAMPLES = 1_000;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile int limit;
+    private long noLoadRttNanos = Long.MAX_VALUE;
+    private int samples;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, double tolerance, double backoffRatio) {
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+    }
+
+    public <T> T call(Callable<T> action) throws Exception {
+        var inFlightNow = tryAcquire();
+        if (inFlightNow < 0) {
+            rejected.increment();
+            throw new LimitExceededException(format("[%s] rejected, limit of %d concurrent calls reached", name, limit));
+        }
+
+        var start = System.nanoTime();
+        var succeeded = false;
+        try {
+            var result = action.call();
+            succeeded = true;
+            return result;
+        } finally {
+            inFlight.decrementAndGet();
+            onSample(System.nanoTime() - start, inFlightNow, succeeded);
+        }
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    //In-flight calls including this one, or -1 when the limit is reached
+    private int tryAcquire() {
+        while (true) {
+            var current = inFlight.get();
+            if (current >= limit) {
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    private void onSample(long rttNanos, int inFlightAtStart, boolean succeeded) {
+        lock.lock();
+        try {
+            if (!succeeded) {
+                limit = Math.max(minLimit, (int) (limit * backoffRatio));
+                return;
+            }
+            //Forget the best RTT from time to time, the downstream may have become slower for good
+            if (++samples % RTT_RESET_SAMPLES == 0 || rttNanos < noLoadRttNanos) {
+                noLoadRttNanos = rttNanos;
+            }
+
+            if (rttNanos > noLoadRttNanos * tolerance) {
+                limit = Math.max(minLimit, (int) (limit * backoffRatio));
+            } else if (inFlightAtStart * 2 >= limit) {
+                //Only grow when the current limit is actually being used
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("concurrency.limit", this, AdaptiveConcurrencyLimiter::limit)
+                .tag("name", name)
+                .description("Current adaptive concurrency limit")
+                .register(registry);
+        Gauge.builder("concurrency.inflight", this, AdaptiveConcurrencyLimiter::inFlight)
+                .tag("name", name)
+                .register(registry);
+        FunctionCounter.builder("concurrency.rejected", this, AdaptiveConcurrencyLimiter::rejected)
+                .tag("name", name)
+                .description("Calls rejected because the limit was reached")
+                .register(registry);
+    }
+}
@@ -0,0 +1,87 @@
+package jon.modern_infra.common.resilience;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.lang.NonNull;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+//Last known good responses of an idempotent read, served by its fallback while the breaker is OPEN or HALF_OPEN.
+//Callers get the value with its age so they can flag it as stale.
+public class FallbackCache<K, V> implements MeterBinder {
+    private final CircuitBreaker circuitBreaker;
+    private final Cache<K, Entry<V>> entries;
+    private final Clock clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public FallbackCache(CircuitBreaker circuitBreaker, long maximumSize, Duration ttl, Clock clock) {
+        this.circuitBreaker = circuitBreaker;
+        this.clock = clock;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public V record(K key, V value) {
+        entries.put(key, new Entry<>(value, clock.instant()));
+        return value;
+    }
+
+    public Optional<Stale<V>> lastKnownGood(K key) {
+        var state = circuitBreaker.getState();
+        if (state != CircuitBreaker.State.OPEN && state != CircuitBreaker.State.HALF_OPEN) {
+            return Optional.empty();
+        }
+
+        var entry = entries.getIfPresent(key);
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+
+        hits.increment();
+        return Optional.of(new Stale<>(entry.value(), Duration.between(entry.recordedAt(), clock.instant())));
+    }
+
+    public String name() {
+        return circuitBreaker.getName();
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of("size", entries.estimatedSize(), "hits", hits.sum(), "misses", misses.sum());
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("resilience4j.circuitbreaker.fallback.cache", hits, LongAdder::doubleValue)
+                .tag("name", name())
+                .tag("result", "hit")
+                .description("Fallbacks served from the last known good response")
+                .register(registry);
+        FunctionCounter.builder("resilience4j.circuitbreaker.fallback.cache", misses, LongAdder::doubleValue)
+                .tag("name", name())
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("resilience4j.circuitbreaker.fallback.cache.size", entries, Cache::estimatedSize)
+                .tag("name", name())
+                .register(registry);
+    }
+
+    public record Stale<V>(V value, Duration age) {
+    }
+
+    private record Entry<V>(V value, Instant recordedAt) {
+    }
+}
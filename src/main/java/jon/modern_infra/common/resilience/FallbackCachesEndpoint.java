@@ -0,0 +1,26 @@
+package jon.modern_infra.common.resilience;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Fallback cache stats by name in /actuator/fallbackcaches. Its own endpoint, /actuator/circuitbreakers keeps the
+//Resilience4j response that dashboards read
+@Component
+@Endpoint(id = "fallbackcaches")
+@RequiredArgsConstructor
+class FallbackCachesEndpoint {
+    private final List<FallbackCache<?, ?>> fallbackCaches;
+
+    @ReadOperation
+    public Map<String, Object> fallbackCaches() {
+        var stats = new LinkedHashMap<String, Object>();
+        fallbackCaches.forEach(cache -> stats.put(cache.name(), cache.stats()));
+        return stats;
+    }
+}
@@ -0,0 +1,173 @@
+package jon.modern_infra.common.resilience;
+
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.lang.NonNull;
+
+import java.io.Serial;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+//If the first attempt hasn't answered after the given percentile of recent latencies, a second one is fired and the
+//first successful answer wins. Only for idempotent calls. Hedges are paid from a RetryBudget.
+public class HedgedExecutor implements MeterBinder {
+    private static final int WINDOW = 1_024;
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final String name;
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final RetryBudget budget;
+    //Attempts run on virtual threads with the caller context (observation, MDC...) restored
+    private final ExecutorService executor = ContextExecutorService.wrap(Executors.newVirtualThreadPerTaskExecutor(), ContextSnapshotFactory.builder().build());
+
+    private final long[] latencies = new long[WINDOW];
+    private final ReentrantLock lock = new ReentrantLock();
+    //long, an int would overflow after 2^31 calls and turn the index negative
+    private long recorded;
+    private volatile long hedgeDelayNanos;
+
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    public HedgedExecutor(String name, boolean enabled, double percentile, Duration minDelay, RetryBudget budget) {
+        this.name = name;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.hedgeDelayNanos = minDelayNanos;
+        this.budget = budget;
+    }
+
+    public <T> T call(Callable<T> action) throws Exception {
+        if (!enabled) {
+            return action.call();
+        }
+
+        budget.deposit();
+        var first = attempt(action);
+        try {
+            return first.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException slow) {
+            if (!budget.tryWithdraw()) {
+                budgetExhausted.increment();
+                return unwrap(first);
+            }
+        } catch (ExecutionException ex) {
+            throw rethrow(ex);
+        }
+
+        hedges.increment();
+        var second = attempt(action);
+        var winner = new CompletableFuture<T>();
+        var failures = new AtomicInteger();
+        first.whenComplete((value, error) -> complete(winner, failures, value, error, false));
+        second.whenComplete((value, error) -> complete(winner, failures, value, error, true));
+
+        //The loser keeps running until it ends, there is no way to abort a blocking HTTP call safely
+        return unwrap(winner);
+    }
+
+    public long hedgeDelayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos);
+    }
+
+    private <T> CompletableFuture<T> attempt(Callable<T> action) {
+        return CompletableFuture.supplyAsync(() -> {
+            var start = System.nanoTime();
+            try {
+                var result = action.call();
+                record(System.nanoTime() - start);
+                return result;
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new AttemptException(ex);
+            }
+        }, executor);
+    }
+
+    private <T> void complete(CompletableFuture<T> winner, AtomicInteger failures, T value, Throwable error, boolean hedge) {
+        if (error == null) {
+            if (winner.complete(value) && hedge) {
+                hedgeWins.increment();
+            }
+        } else if (failures.incrementAndGet() == 2) {
+            winner.completeExceptionally(error);
+        }
+    }
+
+    private void record(long latencyNanos) {
+        lock.lock();
+        try {
+            latencies[(int) (recorded++ % WINDOW)] = latencyNanos;
+            if (recorded % RECOMPUTE_EVERY == 0) {
+                var sorted = Arrays.copyOf(latencies, (int) Math.min(recorded, WINDOW));
+                Arrays.sort(sorted);
+                var index = (int) Math.ceil(percentile * sorted.length) - 1;
+                hedgeDelayNanos = Math.max(minDelayNanos, sorted[Math.max(0, index)]);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static <T> T unwrap(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw rethrow(ex);
+        }
+    }
+
+    private static Exception rethrow(ExecutionException ex) {
+        var cause = ex.getCause() instanceof AttemptException attempt ? attempt.getCause() : ex.getCause();
+        return cause instanceof Exception exception ? exception : ex;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("hedging.delay", this, HedgedExecutor::hedgeDelayMillis)
+                .tag("name", name)
+                .baseUnit("milliseconds")
+                .description("Wait before firing the hedge, the configured percentile of recent latency")
+                .register(registry);
+        Gauge.builder("hedging.budget.tokens", budget, RetryBudget::available)
+                .tag("name", name)
+                .register(registry);
+        FunctionCounter.builder("hedging.hedges", hedges, LongAdder::doubleValue)
+                .tag("name", name)
+                .register(registry);
+        FunctionCounter.builder("hedging.hedges.won", hedgeWins, LongAdder::doubleValue)
+                .tag("name", name)
+                .register(registry);
+        FunctionCounter.builder("hedging.budget.exhausted", budgetExhausted, LongAdder::doubleValue)
+                .tag("name", name)
+                .description("Hedges not fired because the retry budget was empty")
+                .register(registry);
+    }
+
+    private static class AttemptException extends RuntimeException {
+        @Serial private static final long serialVersionUID = 4185067328437104961L;
+
+        AttemptException(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package jon.modern_infra.common.resilience;
+
+import java.io.Serial;
+
+public class LimitExceededException extends RuntimeException {
+    @Serial private static final long serialVersionUID = -2875236018725263120L;
+
+    public LimitExceededException(String message) {
+        super(message);
+    }
+}
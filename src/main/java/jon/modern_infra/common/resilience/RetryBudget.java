@@ -0,0 +1,39 @@
+package jon.modern_infra.common.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//Token bucket shared by retries and hedges: every call deposits depositRatio tokens, every extra attempt takes one.
+//Extra attempts stay a fixed fraction of the traffic, so a failing downstream doesn't get its load multiplied.
+public class RetryBudget {
+    private static final long SCALE = 1_000;
+
+    private final long deposit;
+    private final long maxTokens;
+    private final AtomicLong tokens;
+
+    public RetryBudget(double depositRatio, int maxTokens) {
+        this.deposit = (long) (depositRatio * SCALE);
+        this.maxTokens = maxTokens * SCALE;
+        this.tokens = new AtomicLong(this.maxTokens);
+    }
+
+    public void deposit() {
+        tokens.accumulateAndGet(deposit, (current, amount) -> Math.min(maxTokens, current + amount));
+    }
+
+    public boolean tryWithdraw() {
+        while (true) {
+            var current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    public double available() {
+        return (double) tokens.get() / SCALE;
+    }
+}
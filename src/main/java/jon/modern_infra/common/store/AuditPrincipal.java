@@ -0,0 +1,83 @@
+package jon.modern_infra.common.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+//Who is writing. Resolved once per request, or once per transaction outside of requests (batch, Kafka, cron),
+//and reused for every row written meanwhile
+@Component
+public class AuditPrincipal {
+    private static final String KEY = AuditPrincipal.class.getName();
+    private static final int UUID_SIZE = 36;
+
+    private final String appUser;
+
+    public AuditPrincipal(@Value("${spring.application.name}") String appUser) {
+        this.appUser = appUser;
+    }
+
+    public String current() {
+        var request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            var principal = (String) request.getAttribute(KEY, RequestAttributes.SCOPE_REQUEST);
+            if (principal == null) {
+                principal = resolve();
+                request.setAttribute(KEY, principal, RequestAttributes.SCOPE_REQUEST);
+            }
+            return principal;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            var principal = (String) TransactionSynchronizationManager.getResource(KEY);
+            if (principal == null) {
+                principal = resolve();
+                TransactionSynchronizationManager.bindResource(KEY, principal);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        TransactionSynchronizationManager.unbindResourceIfPossible(KEY);
+                    }
+                });
+            }
+            return principal;
+        }
+
+        return resolve();
+    }
+
+    private String resolve() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+        //For cron operations
+        if (isNotAuthenticated(authentication)) {
+            return appUser;
+        }
+
+        if (authentication.getPrincipal() instanceof UserDetails userDetails) {
+            var identifier = userDetails.getUsername(); //Username should be the UUID or the ID.
+
+            if (identifier.length() == UUID_SIZE) {
+                return identifier;
+            }
+            for (GrantedAuthority authority : userDetails.getAuthorities()) {
+                if (authority.getAuthority().startsWith("UUID:")) {
+                    return authority.getAuthority().substring(5);
+                }
+            }
+        }
+
+        return authentication.getName();
+    }
+
+    private boolean isNotAuthenticated(final Authentication authentication) {
+        return authentication == null || !authentication.isAuthenticated() || authentication.getName().equals("anonymousUser");
+    }
+}
@@ -0,0 +1,15 @@
+package jon.modern_infra.common.store;
+
+import org.springframework.lang.Nullable;
+
+import java.time.LocalDateTime;
+
+//Immutable aggregates that AuditingCallback stamps, each one returns a copy with the audit columns filled
+public interface AuditedRecord<T extends AuditedRecord<T>> {
+    @Nullable
+    String createdBy();
+
+    T withCreated(String createdBy, LocalDateTime createdAt);
+
+    T withModified(String modifiedBy, LocalDateTime modifiedAt);
+}
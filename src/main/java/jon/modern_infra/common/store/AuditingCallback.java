@@ -0,0 +1,40 @@
+package jon.modern_infra.common.store;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.relational.core.mapping.event.BeforeConvertCallback;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+//Auditing for Spring Data JDBC, where the JPA UserAuditListener never runs. save() and saveAll() go through the
+//callback, the custom SQL paths (insertIfAbsent, UserBatchRepo) have to call audit or auditAll before writing.
+//A record without createdBy is being created, otherwise modified
+@Component
+@RequiredArgsConstructor
+public class AuditingCallback implements BeforeConvertCallback<AuditedRecord<?>> {
+    private final AuditPrincipal auditPrincipal;
+
+    @NonNull
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public AuditedRecord<?> onBeforeConvert(@NonNull AuditedRecord<?> aggregate) {
+        return audit((AuditedRecord) aggregate, auditPrincipal.current(), LocalDateTime.now());
+    }
+
+    public <T extends AuditedRecord<T>> T audit(T entity) {
+        return audit(entity, auditPrincipal.current(), LocalDateTime.now());
+    }
+
+    //Principal and timestamp taken once for the whole list
+    public <T extends AuditedRecord<T>> List<T> auditAll(List<T> entities) {
+        var principal = auditPrincipal.current();
+        var now = LocalDateTime.now();
+        return entities.stream().map(entity -> audit(entity, principal, now)).toList();
+    }
+
+    private static <T extends AuditedRecord<T>> T audit(T entity, String principal, LocalDateTime now) {
+        return entity.createdBy() == null ? entity.withCreated(principal, now) : entity.withModified(principal, now);
+    }
+}
@@ -0,0 +1,140 @@
+package jon.modern_infra.common.store;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+//Caps the connections held by virtual threads. Thousands of them can ask for a connection at once and all queue
+//inside the pool, here they wait in a fair queue with a bounded time and the wait is measured.
+//Platform threads (schedulers, pool housekeeping) are never held back. The permit is returned on Connection.close
+@Component
+public class JdbcGovernor implements BeanPostProcessor, MeterBinder {
+    private final boolean enabled;
+    private final int maxInFlight;
+    private final Duration maxWait;
+    private final Semaphore permits;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public JdbcGovernor(@Value("${mi.jdbc.governor.enabled:false}") boolean enabled,
+                        @Value("${mi.jdbc.governor.max-in-flight:10}") int maxInFlight,
+                        @Value("${mi.jdbc.governor.max-wait:2s}") Duration maxWait) {
+        this.enabled = enabled;
+        this.maxInFlight = maxInFlight;
+        this.maxWait = maxWait;
+        this.permits = new Semaphore(maxInFlight, true);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(@NonNull Object bean, @NonNull String beanName) {
+        if (enabled && bean instanceof DataSource dataSource && !(bean instanceof GovernedDataSource)) {
+            return new GovernedDataSource(dataSource);
+        }
+        return bean;
+    }
+
+    //Function meters so the registry isn't needed while the DataSource is post-processed
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        if (!enabled) {
+            return;
+        }
+        FunctionTimer.builder("jdbc.governor.wait", this, governor -> governor.acquired.sum(), governor -> governor.waitNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Time virtual threads waited for a database permit")
+                .register(registry);
+        FunctionCounter.builder("jdbc.governor.rejected", rejected, LongAdder::sum)
+                .description("Connections refused after waiting mi.jdbc.governor.max-wait")
+                .register(registry);
+        Gauge.builder("jdbc.governor.in.flight", permits, semaphore -> maxInFlight - semaphore.availablePermits())
+                .register(registry);
+        Gauge.builder("jdbc.governor.waiting", permits, Semaphore::getQueueLength)
+                .register(registry);
+    }
+
+    private void acquire() throws SQLException {
+        var start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                rejected.increment();
+                throw new SQLTransientConnectionException("No database permit after " + maxWait + ", " + maxInFlight + " operations in flight");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted waiting for a database permit", ex);
+        }
+        acquired.increment();
+        waitNanos.add(System.nanoTime() - start);
+    }
+
+    private class GovernedDataSource extends DelegatingDataSource {
+        GovernedDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        @NonNull
+        public Connection getConnection() throws SQLException {
+            if (!Thread.currentThread().isVirtual()) {
+                return super.getConnection();
+            }
+            acquire();
+            try {
+                return governed(super.getConnection());
+            } catch (SQLException | RuntimeException ex) {
+                permits.release();
+                throw ex;
+            }
+        }
+
+        @Override
+        @NonNull
+        public Connection getConnection(@NonNull String username, @NonNull String password) throws SQLException {
+            if (!Thread.currentThread().isVirtual()) {
+                return super.getConnection(username, password);
+            }
+            acquire();
+            try {
+                return governed(super.getConnection(username, password));
+            } catch (SQLException | RuntimeException ex) {
+                permits.release();
+                throw ex;
+            }
+        }
+
+        //close can be called more than once, the permit only goes back the first time
+        private Connection governed(Connection connection) {
+            var released = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getTargetException();
+                } finally {
+                    if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                        permits.release();
+                    }
+                }
+            });
+        }
+    }
+}
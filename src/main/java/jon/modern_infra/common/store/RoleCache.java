@@ -0,0 +1,36 @@
+package jon.modern_infra.common.store;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.StreamSupport;
+
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+
+//Roles table is tiny and almost never changes, a short TTL is enough to pick up changes without a cache bus
+@Component
+public class RoleCache {
+    private final RoleRepo roleRepo;
+    private final Cache<String, Role> roles;
+
+    public RoleCache(RoleRepo roleRepo, @Value("${mi.roles.cache.ttl:10m}") Duration ttl) {
+        this.roleRepo = roleRepo;
+        this.roles = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(1_000)
+                .build();
+    }
+
+    //Only the codes not cached yet are fetched, all of them in a single IN query
+    public Map<String, Role> findAllByCode(Set<String> codes) {
+        return roles.getAll(codes, missing -> StreamSupport.stream(roleRepo.findAllById(new ArrayList<>(missing)).spliterator(), false)
+                .collect(toMap(Role::role_code, identity())));
+    }
+}
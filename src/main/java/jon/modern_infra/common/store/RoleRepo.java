@@ -0,0 +1,6 @@
+package jon.modern_infra.common.store;
+
+import org.springframework.data.repository.CrudRepository;
+
+public interface RoleRepo extends CrudRepository<Role, String> {
+}
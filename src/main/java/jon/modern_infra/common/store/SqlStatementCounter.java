@@ -0,0 +1,88 @@
+package jon.modern_infra.common.store;
+
+import io.micrometer.context.ThreadLocalAccessor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Counts the statements prepared on the current unit of work (e.g. a GraphQL operation).
+//The counter travels to other threads with context-propagation, so it also works with virtual threads and DataLoaders.
+@Component
+public class SqlStatementCounter implements BeanPostProcessor {
+    public static final String CONTEXT_KEY = "mi.sql.statements";
+
+    private static final ThreadLocal<AtomicInteger> CURRENT = new ThreadLocal<>();
+    private static final Set<String> STATEMENT_FACTORIES = Set.of("createStatement", "prepareStatement", "prepareCall");
+
+    @Override
+    public Object postProcessAfterInitialization(@NonNull Object bean, @NonNull String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof CountingDataSource)) {
+            return new CountingDataSource(dataSource);
+        }
+        return bean;
+    }
+
+    private static class CountingDataSource extends DelegatingDataSource {
+        CountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        @NonNull
+        public Connection getConnection() throws SQLException {
+            return counting(super.getConnection());
+        }
+
+        @Override
+        @NonNull
+        public Connection getConnection(@NonNull String username, @NonNull String password) throws SQLException {
+            return counting(super.getConnection(username, password));
+        }
+
+        private static Connection counting(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                var counter = CURRENT.get();
+                if (counter != null && STATEMENT_FACTORIES.contains(method.getName())) {
+                    counter.incrementAndGet();
+                }
+
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getTargetException();
+                }
+            });
+        }
+    }
+
+    public static class Accessor implements ThreadLocalAccessor<AtomicInteger> {
+        @Override
+        public Object key() {
+            return CONTEXT_KEY;
+        }
+
+        @Override
+        public AtomicInteger getValue() {
+            return CURRENT.get();
+        }
+
+        @Override
+        public void setValue(AtomicInteger value) {
+            CURRENT.set(value);
+        }
+
+        @Override
+        public void setValue() {
+            CURRENT.remove();
+        }
+    }
+}
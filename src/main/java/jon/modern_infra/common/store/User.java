@@ -26,7 +26,17 @@ public record User(
         String modifiedBy,
         java.time.LocalDateTime modifiedAt,
         Boolean deleted
-) {
+) implements AuditedRecord<User> {
+    @Override
+    public User withCreated(String createdBy, LocalDateTime createdAt) {
+        return new User(id, realname, username, email, password, phoneNumbers, roleCode, version, createdBy, createdAt, modifiedBy, modifiedAt, deleted);
+    }
+
+    @Override
+    public User withModified(String modifiedBy, LocalDateTime modifiedAt) {
+        return new User(id, realname, username, email, password, phoneNumbers, roleCode, version, createdBy, createdAt, modifiedBy, modifiedAt, deleted);
+    }
+
     public record RealName(String realname) {
         public static User.RealName of(String realname) {
             return new User.RealName(realname);
@@ -60,7 +70,8 @@ public record User(
     @NoArgsConstructor(access = AccessLevel.PRIVATE)
     public static class Factory {
         public static User register(UUID id, User.RealName realName, User.UserName userName, User.Email email, User.Password pw, User.PhoneNumbers phoneNumbers) {
-            return new User(id, realName, userName, email, pw, phoneNumbers, null, 0, "Me", LocalDateTime.now(), null, null, false);
+            //createdBy and createdAt come from AuditingCallback when the user is written
+            return new User(id, realName, userName, email, pw, phoneNumbers, null, 0, null, null, null, null, false);
         }
     }
 }
@@ -0,0 +1,79 @@
+package jon.modern_infra.common.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+//Bulk paths for User that Spring Data JDBC can't do in few round trips
+@Repository
+public class UserBatchRepo {
+    //Postgres allows up to 32767 bind parameters per statement
+    private static final int IN_CHUNK_SIZE = 1_000;
+
+    private static final String INSERT = """
+            INSERT INTO mi.users (user_id, realname, username, email, password, phone_numbers, role_code, version, created_by, created_at, modified_by, modified_at, deleted)
+            VALUES (:id, :realname, :username, :email, :password, :phoneNumbers, :roleCode, :version, :createdBy, :createdAt, :modifiedBy, :modifiedAt, :deleted)
+            ON CONFLICT (user_id) DO NOTHING
+            """;
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final boolean precompiledMapping;
+
+    public UserBatchRepo(NamedParameterJdbcTemplate jdbc, @Value("${mi.users.precompiled-mapping.enabled:false}") boolean precompiledMapping) {
+        this.jdbc = jdbc;
+        this.precompiledMapping = precompiledMapping;
+    }
+
+    public Set<UUID> findExistingIds(Collection<UUID> ids) {
+        var existing = new HashSet<UUID>();
+        var pending = new ArrayList<>(ids);
+
+        for (int from = 0; from < pending.size(); from += IN_CHUNK_SIZE) {
+            var chunk = pending.subList(from, Math.min(from + IN_CHUNK_SIZE, pending.size()));
+            existing.addAll(jdbc.queryForList("SELECT user_id FROM mi.users WHERE user_id IN (:ids)", new MapSqlParameterSource("ids", chunk), UUID.class));
+        }
+        return existing;
+    }
+
+    //Returns, for every user, whether it was inserted. False means someone else inserted the same id meanwhile.
+    //Rows are written as given, run them through AuditingCallback.auditAll first
+    public boolean[] insertAll(List<User> users) {
+        var params = users.stream().map(user -> precompiledMapping ? new UserParameterSource(user) : toParams(user)).toArray(SqlParameterSource[]::new);
+        var counts = jdbc.batchUpdate(INSERT, params);
+
+        var inserted = new boolean[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            inserted[i] = counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO;
+        }
+        return inserted;
+    }
+
+    private static SqlParameterSource toParams(User user) {
+        return new MapSqlParameterSource()
+                .addValue("id", user.id())
+                .addValue("realname", user.realname() == null ? null : user.realname().realname())
+                .addValue("username", user.username().username())
+                .addValue("email", user.email().email())
+                .addValue("password", user.password().password())
+                //As array, a List would be expanded as an IN list by the named parameter parser
+                .addValue("phoneNumbers", user.phoneNumbers() == null || user.phoneNumbers().phoneNumbers() == null ? null : user.phoneNumbers().phoneNumbers().toArray(String[]::new))
+                .addValue("roleCode", user.roleCode())
+                .addValue("version", user.version())
+                .addValue("createdBy", user.createdBy())
+                .addValue("createdAt", user.createdAt() == null ? null : Timestamp.valueOf(user.createdAt()))
+                .addValue("modifiedBy", user.modifiedBy())
+                .addValue("modifiedAt", user.modifiedAt() == null ? null : Timestamp.valueOf(user.modifiedAt()))
+                .addValue("deleted", user.deleted());
+    }
+}
@@ -0,0 +1,23 @@
+package jon.modern_infra.common.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jdbc.repository.QueryMappingConfiguration;
+import org.springframework.data.jdbc.repository.config.DefaultQueryMappingConfiguration;
+
+//With mi.users.precompiled-mapping.enabled the @Query methods of UserRepo returning User (the users() pages)
+//and UserBatchRepo.insertAll use the hand-written UserRowMapper and UserParameterSource.
+//findById and the derived queries keep the Spring Data JDBC mapping
+@Configuration
+class UserMappingConfig {
+
+    @Bean
+    QueryMappingConfiguration userQueryMapping(@Value("${mi.users.precompiled-mapping.enabled:false}") boolean enabled) {
+        var mapping = new DefaultQueryMappingConfiguration();
+        if (enabled) {
+            mapping.registerRowMapper(User.class, UserRowMapper.INSTANCE);
+        }
+        return mapping;
+    }
+}
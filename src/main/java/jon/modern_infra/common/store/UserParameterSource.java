@@ -0,0 +1,54 @@
+package jon.modern_infra.common.store;
+
+import org.springframework.jdbc.core.namedparam.AbstractSqlParameterSource;
+import org.springframework.lang.NonNull;
+
+import java.sql.Timestamp;
+
+//Parameters of a User read on demand by name, instead of a MapSqlParameterSource filled with every value per row.
+//Same names and values as UserBatchRepo.toParams
+public final class UserParameterSource extends AbstractSqlParameterSource {
+    private static final String[] NAMES = {"id", "realname", "username", "email", "password", "phoneNumbers", "roleCode", "version",
+            "createdBy", "createdAt", "modifiedBy", "modifiedAt", "deleted"};
+
+    private final User user;
+
+    public UserParameterSource(User user) {
+        this.user = user;
+    }
+
+    @Override
+    public boolean hasValue(@NonNull String paramName) {
+        return switch (paramName) {
+            case "id", "realname", "username", "email", "password", "phoneNumbers", "roleCode", "version",
+                 "createdBy", "createdAt", "modifiedBy", "modifiedAt", "deleted" -> true;
+            default -> false;
+        };
+    }
+
+    @Override
+    public Object getValue(@NonNull String paramName) {
+        return switch (paramName) {
+            case "id" -> user.id();
+            case "realname" -> user.realname() == null ? null : user.realname().realname();
+            case "username" -> user.username().username();
+            case "email" -> user.email().email();
+            case "password" -> user.password().password();
+            //As array, a List would be expanded as an IN list by the named parameter parser
+            case "phoneNumbers" -> user.phoneNumbers() == null || user.phoneNumbers().phoneNumbers() == null ? null : user.phoneNumbers().phoneNumbers().toArray(String[]::new);
+            case "roleCode" -> user.roleCode();
+            case "version" -> user.version();
+            case "createdBy" -> user.createdBy();
+            case "createdAt" -> user.createdAt() == null ? null : Timestamp.valueOf(user.createdAt());
+            case "modifiedBy" -> user.modifiedBy();
+            case "modifiedAt" -> user.modifiedAt() == null ? null : Timestamp.valueOf(user.modifiedAt());
+            case "deleted" -> user.deleted();
+            default -> throw new IllegalArgumentException("No value registered for key '" + paramName + "'");
+        };
+    }
+
+    @Override
+    public String[] getParameterNames() {
+        return NAMES.clone();
+    }
+}
@@ -1,18 +1,100 @@
 package jon.modern_infra.common.store;
 
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.lang.Nullable;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 import static java.lang.String.format;
 
 public interface UserRepo extends CrudRepository<User, UUID> {
+    String CURSOR_KEY = "user_id";
+    String CACHE = "users";
+
+    //Read-through, misses throw so they are never cached
+    @Cacheable(cacheNames = CACHE, key = "#id")
     default User findByIdOrElseThrow(UUID id) {
         return findById(id).orElseThrow(() -> new IllegalArgumentException(format("User [%s] not found", id)));
     }
 
-    default UUID registerUser(User user) {
-        var savedUser = save(user);
-        return savedUser.id();
+    //Existence check and insert in the same statement, empty means the user already existed
+    @CacheEvict(cacheNames = CACHE, key = "#user.id()")
+    default Optional<UUID> registerUserIfAbsent(User user) {
+        return insertIfAbsent(
+                user.id(),
+                user.realname() == null ? null : user.realname().realname(),
+                user.username().username(),
+                user.email().email(),
+                user.password().password(),
+                user.phoneNumbers() == null || user.phoneNumbers().phoneNumbers() == null ? null : user.phoneNumbers().phoneNumbers().toArray(String[]::new),
+                user.roleCode(),
+                user.version(),
+                user.createdBy(),
+                user.createdAt(),
+                user.deleted()
+        );
+    }
+
+    @Query("""
+            INSERT INTO mi.users (user_id, realname, username, email, password, phone_numbers, role_code, version, created_by, created_at, deleted)
+            VALUES (:id, :realname, :username, :email, :password, :phoneNumbers, :roleCode, :version, :createdBy, :createdAt, :deleted)
+            ON CONFLICT (user_id) DO NOTHING
+            RETURNING user_id
+            """)
+    Optional<UUID> insertIfAbsent(UUID id, String realname, String username, String email, String password, String[] phoneNumbers,
+                                  String roleCode, Integer version, String createdBy, LocalDateTime createdAt, Boolean deleted);
+
+    //Every write path has to evict, otherwise findByIdOrElseThrow serves stale users until they expire
+    @Override
+    @CacheEvict(cacheNames = CACHE, key = "#entity.id()")
+    <S extends User> S save(S entity);
+
+    @Override
+    @CacheEvict(cacheNames = CACHE, allEntries = true)
+    <S extends User> Iterable<S> saveAll(Iterable<S> entities);
+
+    @Override
+    @CacheEvict(cacheNames = CACHE, key = "#id")
+    void deleteById(UUID id);
+
+    @Override
+    @CacheEvict(cacheNames = CACHE, key = "#entity.id()")
+    void delete(User entity);
+
+    @Override
+    @CacheEvict(cacheNames = CACHE, allEntries = true)
+    void deleteAllById(Iterable<? extends UUID> ids);
+
+    @Override
+    @CacheEvict(cacheNames = CACHE, allEntries = true)
+    void deleteAll(Iterable<? extends User> entities);
+
+    @Override
+    @CacheEvict(cacheNames = CACHE, allEntries = true)
+    void deleteAll();
+
+    //Keyset pagination, the PK index does the work so every page costs the same no matter how deep it is
+    @Query("SELECT * FROM mi.users ORDER BY user_id LIMIT :limit")
+    List<User> findFirstPage(int limit);
+
+    @Query("SELECT * FROM mi.users WHERE user_id > :after ORDER BY user_id LIMIT :limit")
+    List<User> findPageAfter(UUID after, int limit);
+
+    default Window<User> scroll(@Nullable UUID after, int size) {
+        //Fetch one extra row to know if there is a next page without a COUNT(*)
+        var rows = after == null ? findFirstPage(size + 1) : findPageAfter(after, size + 1);
+        var hasNext = rows.size() > size;
+        var page = hasNext ? rows.subList(0, size) : rows;
+
+        return Window.from(page, i -> ScrollPosition.forward(Map.of(CURSOR_KEY, page.get(i).id())), hasNext);
     }
 }
@@ -0,0 +1,55 @@
+package jon.modern_infra.common.store;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.lang.NonNull;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.UUID;
+
+//User straight from the typed getters: no entity metadata, reflection nor conversion service per property.
+//Same result as Spring Data JDBC, the @Embedded.Empty records are always created even when their column is null.
+//Needs every column of mi.users, as the SELECT * queries of UserRepo return
+public final class UserRowMapper implements RowMapper<User> {
+    public static final UserRowMapper INSTANCE = new UserRowMapper();
+
+    private UserRowMapper() {
+    }
+
+    @Override
+    public User mapRow(@NonNull ResultSet rs, int rowNum) throws SQLException {
+        var phoneNumbers = rs.getArray("phone_numbers");
+        return new User(
+                rs.getObject("user_id", UUID.class),
+                User.RealName.of(rs.getString("realname")),
+                User.UserName.of(rs.getString("username")),
+                User.Email.of(rs.getString("email")),
+                User.Password.of(rs.getString("password")),
+                User.PhoneNumbers.of(phoneNumbers == null ? null : Arrays.asList((String[]) phoneNumbers.getArray())),
+                rs.getString("role_code"),
+                integer(rs, "version"),
+                rs.getString("created_by"),
+                localDateTime(rs.getTimestamp("created_at")),
+                rs.getString("modified_by"),
+                localDateTime(rs.getTimestamp("modified_at")),
+                bool(rs, "deleted")
+        );
+    }
+
+    private static Integer integer(ResultSet rs, String column) throws SQLException {
+        var value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Boolean bool(ResultSet rs, String column) throws SQLException {
+        var value = rs.getBoolean(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static LocalDateTime localDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+}
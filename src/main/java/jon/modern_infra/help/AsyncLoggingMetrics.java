@@ -0,0 +1,32 @@
+package jon.modern_infra.help;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.async.AsyncLoggerContext;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+class AsyncLoggingMetrics implements MeterBinder {
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        if (LogManager.getContext(false) instanceof AsyncLoggerContext context) {
+            var ringBuffer = context.createRingBufferAdmin();
+            Gauge.builder("logging.async.queue.depth", ringBuffer, buffer -> buffer.getBufferSize() - buffer.getRemainingCapacity())
+                    .description("Log events waiting in the async ring buffer")
+                    .register(registry);
+            Gauge.builder("logging.async.queue.capacity", ringBuffer, buffer -> buffer.getBufferSize())
+                    .register(registry);
+        }
+
+        FunctionCounter.builder("logging.async.events.dropped", LogOverflowPolicy.dropped(), LongAdder::doubleValue)
+                .description("Log events discarded because the ring buffer was full")
+                .register(registry);
+    }
+}
@@ -0,0 +1,57 @@
+package jon.modern_infra.help;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//Canonical, bounded set of tag values taken straight from a region of the input.
+//Known values are found without creating a substring, so after warm up it doesn't allocate. Once full it answers OTHER
+public class BoundedTagValues {
+    public static final String OTHER = "OTHER";
+
+    private final int maxValues;
+    private final AtomicReferenceArray<String> table;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public BoundedTagValues(int maxValues) {
+        this.maxValues = maxValues;
+        this.table = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(2, maxValues) * 4 - 1) << 1);
+    }
+
+    //Everything before the first delimiter, like value.split(delimiter)[0]
+    public String prefix(String value, char delimiter) {
+        var end = value.indexOf(delimiter);
+        return of(value, end < 0 ? value.length() : end);
+    }
+
+    private String of(String value, int length) {
+        var mask = table.length() - 1;
+        var index = hash(value, length) & mask;
+
+        while (true) {
+            var current = table.get(index);
+            if (current == null) {
+                if (size.get() >= maxValues) {
+                    return OTHER;
+                }
+                var candidate = value.substring(0, length);
+                if (table.compareAndSet(index, null, candidate)) {
+                    size.incrementAndGet();
+                    return candidate;
+                }
+                continue;
+            }
+            if (current.length() == length && current.regionMatches(0, value, 0, length)) {
+                return current;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private static int hash(String value, int length) {
+        var hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
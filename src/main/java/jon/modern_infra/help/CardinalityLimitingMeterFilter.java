@@ -0,0 +1,77 @@
+package jon.modern_infra.help;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//Caps the distinct values of every tag key per meter name, the rest are folded into OTHER.
+//Protects Prometheus/Datadog from a client sending unexpected values into a tag
+@Component
+class CardinalityLimitingMeterFilter implements MeterFilter, MeterBinder {
+    static final String OTHER = "OTHER";
+    private static final String REJECTED_METER = "metrics.tag.values.rejected";
+
+    private final int maxValuesPerTag;
+    private final Map<String, Map<String, Set<String>>> seenValues = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+
+    CardinalityLimitingMeterFilter(@Value("${mi.metrics.max-values-per-tag:100}") int maxValuesPerTag) {
+        this.maxValuesPerTag = maxValuesPerTag;
+    }
+
+    @Override
+    @NonNull
+    public Meter.Id map(@NonNull Meter.Id id) {
+        if (REJECTED_METER.equals(id.getName())) {
+            return id;
+        }
+
+        var tags = new ArrayList<>(id.getTags());
+        var folded = false;
+        for (int i = 0; i < tags.size(); i++) {
+            var tag = tags.get(i);
+            if (!admit(id.getName(), tag)) {
+                tags.set(i, Tag.of(tag.getKey(), OTHER));
+                folded = true;
+            }
+        }
+        return folded ? id.replaceTags(tags) : id;
+    }
+
+    private boolean admit(String meterName, Tag tag) {
+        if (OTHER.equals(tag.getValue())) {
+            return true;
+        }
+
+        var values = seenValues.computeIfAbsent(meterName, name -> new ConcurrentHashMap<>())
+                .computeIfAbsent(tag.getKey(), key -> ConcurrentHashMap.newKeySet());
+        if (values.contains(tag.getValue())) {
+            return true;
+        }
+        if (values.size() >= maxValuesPerTag) {
+            rejected.increment();
+            return false;
+        }
+        values.add(tag.getValue());
+        return true;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder(REJECTED_METER, rejected, LongAdder::doubleValue)
+                .description("Tag values folded into OTHER because their tag key reached its cardinality cap")
+                .register(registry);
+    }
+}
@@ -0,0 +1,54 @@
+package jon.modern_infra.help;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.async.AsyncQueueFullPolicy;
+import org.apache.logging.log4j.core.async.EventRoute;
+import org.apache.logging.log4j.util.PropertiesUtil;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//Instantiated by Log4j (log4j2.asyncQueueFullPolicy), decides what happens to an event when the ring buffer is full
+public class LogOverflowPolicy implements AsyncQueueFullPolicy {
+    enum Mode {BLOCK, DROP, SAMPLE}
+
+    private static final LongAdder DROPPED = new LongAdder();
+
+    private final Mode mode;
+    private final int sampleRate;
+    private final AtomicLong overflowed = new AtomicLong();
+
+    public LogOverflowPolicy() {
+        var properties = PropertiesUtil.getProperties();
+        this.mode = Mode.valueOf(properties.getStringProperty("mi.logging.overflow", Mode.BLOCK.name()).toUpperCase(Locale.ROOT));
+        this.sampleRate = Math.max(1, properties.getIntegerProperty("mi.logging.overflow.sampleRate", 10));
+    }
+
+    public static LongAdder dropped() {
+        return DROPPED;
+    }
+
+    @Override
+    public EventRoute getRoute(long backgroundThreadId, Level level) {
+        //The background thread logging into its own full buffer would deadlock
+        if (Thread.currentThread().threadId() == backgroundThreadId) {
+            return EventRoute.SYNCHRONOUS;
+        }
+        //Warnings and errors are never lost
+        if (level.isMoreSpecificThan(Level.WARN)) {
+            return EventRoute.ENQUEUE;
+        }
+
+        return switch (mode) {
+            case BLOCK -> EventRoute.ENQUEUE;
+            case DROP -> discard();
+            case SAMPLE -> overflowed.incrementAndGet() % sampleRate == 0 ? EventRoute.ENQUEUE : discard();
+        };
+    }
+
+    private static EventRoute discard() {
+        DROPPED.increment();
+        return EventRoute.DISCARD;
+    }
+}
@@ -0,0 +1,250 @@
+package jon.modern_infra.help;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.tracing.handler.TracingObservationHandler;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+//Always-on JFR recording with the settings of the default profile (execution samples every 20ms, allocation samples
+//throttled), kept on disk as a ring buffer bounded by max-age and max-size.
+//Every observation scope (http.server.requests, @Observed, Observation.observe) is recorded as an event with the
+//MDC trace id, so the samples taken on that thread while the scope was open can be attributed to it afterwards
+@Slf4j
+@Component
+public class ObservationProfiler implements ObservationHandler<Observation.Context>, SmartLifecycle {
+    static final String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+    static final String ALLOCATION_SAMPLE = "jdk.ObjectAllocationSample";
+    static final String SCOPE = "jon.modern_infra.ObservationScope";
+
+    private final boolean enabled;
+    private final Duration executionPeriod;
+    private final String allocationThrottle;
+    private final Duration maxAge;
+    private final DataSize maxSize;
+    private volatile Recording recording;
+
+    public ObservationProfiler(@Value("${mi.profiling.enabled:true}") boolean enabled,
+                               @Value("${mi.profiling.execution-period:20ms}") Duration executionPeriod,
+                               @Value("${mi.profiling.allocation-throttle:150/s}") String allocationThrottle,
+                               @Value("${mi.profiling.max-age:10m}") Duration maxAge,
+                               @Value("${mi.profiling.max-size:100MB}") DataSize maxSize) {
+        this.enabled = enabled;
+        this.executionPeriod = executionPeriod;
+        this.allocationThrottle = allocationThrottle;
+        this.maxAge = maxAge;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        var profiling = new Recording();
+        profiling.setName("mi-profiling");
+        profiling.setToDisk(true);
+        profiling.setMaxAge(maxAge);
+        profiling.setMaxSize(maxSize.toBytes());
+        profiling.enable(EXECUTION_SAMPLE).withPeriod(executionPeriod);
+        profiling.enable(ALLOCATION_SAMPLE).with("throttle", allocationThrottle).withStackTrace();
+        profiling.enable(ScopeEvent.class).withoutStackTrace().withoutThreshold();
+        profiling.start();
+        recording = profiling;
+        log.info("Profiling recording started, last {} or {} kept on disk", maxAge, maxSize);
+    }
+
+    @Override
+    public void stop() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return recording != null;
+    }
+
+    @Override
+    public boolean supportsContext(@NonNull Observation.Context context) {
+        return recording != null;
+    }
+
+    //Scopes open and close on the same thread, which is what the samples are matched against
+    @Override
+    public void onScopeOpened(@NonNull Observation.Context context) {
+        var event = new ScopeEvent();
+        if (event.isEnabled()) {
+            event.traceId = traceId(context);
+            event.begin();
+            context.put(ScopeEvent.class, event);
+        }
+    }
+
+    //The span of the observation when tracing is on, it may not be in the MDC yet for the outermost request scope
+    @Nullable
+    private static String traceId(Observation.Context context) {
+        TracingObservationHandler.TracingContext tracing = context.get(TracingObservationHandler.TracingContext.class);
+        var span = tracing == null ? null : tracing.getSpan();
+        return span != null ? span.context().traceId() : MDC.get(TraceIdGenerator.TRACE_ID);
+    }
+
+    @Override
+    public void onScopeClosed(@NonNull Observation.Context context) {
+        ScopeEvent event = context.remove(ScopeEvent.class);
+        if (event != null) {
+            event.end();
+            event.operation = context.getName();
+            event.contextualName = context.getContextualName();
+            event.commit();
+        }
+    }
+
+    //Collapsed stacks (root;...;leaf count) of the scopes with that trace id and/or operation, the format flamegraph.pl
+    //and speedscope read. CPU is weighted by samples, allocations by the sampled bytes
+    public Profile profile(@Nullable String traceId, @Nullable String operation) {
+        var profiling = recording;
+        if (profiling == null) {
+            return Profile.EMPTY;
+        }
+
+        Path file = null;
+        try {
+            file = Files.createTempFile("mi-profiling", ".jfr");
+            profiling.dump(file);
+
+            var scopes = new HashMap<Long, List<Scope>>();
+            var count = new int[1];
+            read(file, event -> {
+                if (SCOPE.equals(event.getEventType().getName()) && event.getThread() != null
+                        && (traceId == null || traceId.equals(event.getString("traceId")))
+                        && (operation == null || operation.equals(event.getString("operation")) || operation.equals(event.getString("contextualName")))) {
+                    scopes.computeIfAbsent(event.getThread().getJavaThreadId(), id -> new ArrayList<>()).add(new Scope(event.getStartTime(), event.getEndTime()));
+                    count[0]++;
+                }
+            });
+            if (scopes.isEmpty()) {
+                return Profile.EMPTY;
+            }
+
+            var cpu = new HashMap<String, Long>();
+            var allocations = new HashMap<String, Long>();
+            read(file, event -> {
+                switch (event.getEventType().getName()) {
+                    case EXECUTION_SAMPLE -> {
+                        if (inScope(scopes, event.getThread("sampledThread") == null ? null : event.getThread("sampledThread").getJavaThreadId(), event.getStartTime())) {
+                            cpu.merge(collapsed(event), 1L, Long::sum);
+                        }
+                    }
+                    case ALLOCATION_SAMPLE -> {
+                        if (inScope(scopes, event.getThread() == null ? null : event.getThread().getJavaThreadId(), event.getStartTime())) {
+                            allocations.merge(collapsed(event), event.getLong("weight"), Long::sum);
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            });
+
+            return new Profile(count[0],
+                    cpu.values().stream().mapToLong(Long::longValue).sum(),
+                    allocations.values().stream().mapToLong(Long::longValue).sum(),
+                    lines(cpu), lines(allocations));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            if (file != null) {
+                file.toFile().delete();
+            }
+        }
+    }
+
+    private static void read(Path file, Consumer<RecordedEvent> consumer) throws IOException {
+        try (var events = new RecordingFile(file)) {
+            while (events.hasMoreEvents()) {
+                consumer.accept(events.readEvent());
+            }
+        }
+    }
+
+    private static boolean inScope(Map<Long, List<Scope>> scopes, @Nullable Long threadId, Instant time) {
+        var threadScopes = threadId == null ? null : scopes.get(threadId);
+        if (threadScopes == null) {
+            return false;
+        }
+        for (var scope : threadScopes) {
+            if (!time.isBefore(scope.start()) && !time.isAfter(scope.end())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //JFR frames are leaf first
+    private static String collapsed(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "unknown";
+        }
+        var frames = event.getStackTrace().getFrames();
+        var stack = new StringBuilder();
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            RecordedFrame frame = frames.get(i);
+            stack.append(frame.getMethod().getType().getName()).append('.').append(frame.getMethod().getName());
+            if (i > 0) {
+                stack.append(';');
+            }
+        }
+        return stack.toString();
+    }
+
+    private static List<String> lines(Map<String, Long> stacks) {
+        return stacks.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .map(entry -> entry.getKey() + " " + entry.getValue())
+                .toList();
+    }
+
+    private record Scope(Instant start, Instant end) {
+    }
+
+    public record Profile(int scopes, long executionSamples, long allocatedBytes, List<String> cpu, List<String> allocations) {
+        static final Profile EMPTY = new Profile(0, 0, 0, List.of(), List.of());
+    }
+
+    @Name(SCOPE)
+    @Label("Observation Scope")
+    @StackTrace(false)
+    static class ScopeEvent extends Event {
+        @Label("Trace Id") String traceId;
+        @Label("Operation") String operation;
+        @Label("Contextual Name") String contextualName;
+    }
+}
@@ -0,0 +1,25 @@
+package jon.modern_infra.help;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+//GET /actuator/profile?traceId=... or ?operation=getBalanceStartYear, both narrow the scopes.
+//jq -r '.cpu[]' | flamegraph.pl > cpu.svg
+@Component
+@Endpoint(id = "profile")
+@RequiredArgsConstructor
+class ProfileEndpoint {
+    private final ObservationProfiler profiler;
+
+    @ReadOperation
+    public ObservationProfiler.Profile profile(@Nullable String traceId, @Nullable String operation) {
+        if (traceId == null && operation == null) {
+            throw new InvalidEndpointRequestException("traceId or operation is required", "traceId or operation is required");
+        }
+        return profiler.profile(traceId, operation);
+    }
+}
@@ -0,0 +1,76 @@
+package jon.modern_infra.help;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+//Slowest bean initializations of the startup, only with BufferingApplicationStartup (see AppRunner).
+//Instantiating a bean includes its dependencies, so the ranking is by self time: its own duration minus the
+//duration of the beans created inside it. /actuator/startup has the raw steps
+@Component
+@Endpoint(id = "startupbeans")
+class StartupBeansEndpoint {
+    private static final String BEAN_INSTANTIATE = "spring.beans.instantiate";
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final ApplicationStartup applicationStartup;
+
+    StartupBeansEndpoint(ApplicationStartup applicationStartup) {
+        this.applicationStartup = applicationStartup;
+    }
+
+    @ReadOperation
+    public SlowestBeans slowest(@Nullable Integer limit) {
+        if (!(applicationStartup instanceof BufferingApplicationStartup buffering)) {
+            return new SlowestBeans(false, 0, List.of());
+        }
+
+        //Not drained, /actuator/startup keeps working
+        var events = buffering.getBufferedTimeline().getEvents().stream()
+                .filter(event -> BEAN_INSTANTIATE.equals(event.getStartupStep().getName()))
+                .toList();
+
+        var childrenNanos = new HashMap<Long, Long>();
+        for (var event : events) {
+            var parentId = event.getStartupStep().getParentId();
+            if (parentId != null) {
+                childrenNanos.merge(parentId, event.getDuration().toNanos(), Long::sum);
+            }
+        }
+
+        var beans = events.stream()
+                .map(event -> new BeanInit(
+                        beanName(event),
+                        event.getDuration().toMillis(),
+                        Duration.ofNanos(event.getDuration().toNanos() - childrenNanos.getOrDefault(event.getStartupStep().getId(), 0L)).toMillis()))
+                .sorted(Comparator.comparingLong(BeanInit::selfMillis).reversed())
+                .limit(limit == null ? DEFAULT_LIMIT : limit)
+                .toList();
+
+        return new SlowestBeans(true, events.size(), beans);
+    }
+
+    private static String beanName(StartupTimeline.TimelineEvent event) {
+        for (var tag : event.getStartupStep().getTags()) {
+            if ("beanName".equals(tag.getKey())) {
+                return tag.getValue();
+            }
+        }
+        return "unknown";
+    }
+
+    public record SlowestBeans(boolean profiling, int beansInstantiated, List<BeanInit> slowest) {
+    }
+
+    public record BeanInit(String beanName, long totalMillis, long selfMillis) {
+    }
+}
@@ -0,0 +1,35 @@
+package jon.modern_infra.help;
+
+import io.micrometer.tracing.Tracer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+//Runs inside ServerHttpObservationFilter (HIGHEST_PRECEDENCE + 1) so the request span is already current
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+@RequiredArgsConstructor
+class TraceIdFilter extends OncePerRequestFilter {
+    private final ObjectProvider<Tracer> tracer;
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull FilterChain chain) throws ServletException, IOException {
+        TraceIdGenerator.bindTraceId(tracer.getIfAvailable());
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            //Never outlive the request, pooled platform threads or async dispatches would log a stale id
+            TraceIdGenerator.clearTraceId();
+        }
+    }
+}
@@ -1,23 +1,38 @@
 package jon.modern_infra.help;
 
+import io.micrometer.tracing.Tracer;
 import org.slf4j.MDC;
+import org.springframework.lang.Nullable;
 
-import java.util.Random;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class TraceIdGenerator {
+    public static final String TRACE_ID = "traceId";
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
     private TraceIdGenerator() {
     }
 
-    public static void generateTraceId() {
-        int length = 14;
-        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
-        StringBuilder sb = new StringBuilder();
-        Random random = new Random();
-        for (int i = 0; i < length; i++) {
-            sb.append(chars.charAt(random.nextInt(chars.length())));
-        }
-        var traceId = sb.toString();
-        MDC.put("traceId", traceId);
+    //The request span trace id when tracing is on, so logs and Zipkin share the same id. Otherwise a new one
+    public static void bindTraceId(@Nullable Tracer tracer) {
+        var span = tracer == null ? null : tracer.currentSpan();
+        MDC.put(TRACE_ID, span != null ? span.context().traceId() : generateTraceId());
     }
 
-}
\ No newline at end of file
+    public static void clearTraceId() {
+        MDC.remove(TRACE_ID);
+    }
+
+    //16 hex chars like a Brave 64-bit trace id. ThreadLocalRandom and a non-escaping buffer, the String is the only garbage
+    public static String generateTraceId() {
+        var random = ThreadLocalRandom.current().nextLong();
+        var chars = new byte[16];
+        for (int i = chars.length - 1; i >= 0; i--) {
+            chars[i] = HEX[(int) (random & 0xF)];
+            random >>>= 4;
+        }
+        return new String(chars, StandardCharsets.ISO_8859_1);
+    }
+}
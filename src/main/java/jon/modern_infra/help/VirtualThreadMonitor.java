@@ -0,0 +1,181 @@
+package jon.modern_infra.help;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+//Streams the JFR virtual thread events in-process and aggregates them by the first application frame of the stack,
+//the code that was holding a monitor (pinned) or whose continuation couldn't be scheduled (submit failed).
+//Served by /actuator/virtualthreads and as jvm.threads.virtual.* meters
+@Slf4j
+@Component
+public class VirtualThreadMonitor implements SmartLifecycle, MeterBinder {
+    static final String PINNED = "jdk.VirtualThreadPinned";
+    static final String SUBMIT_FAILED = "jdk.VirtualThreadSubmitFailed";
+    private static final int MAX_FRAMES = 500;
+    private static final int SAMPLE_STACK_DEPTH = 12;
+    private static final String OTHER = "OTHER";
+
+    private final boolean enabled;
+    private final Duration pinnedThreshold;
+    private final Map<String, FrameStats> frames = new ConcurrentHashMap<>();
+    //Entries other than OTHER, reserved before an entry is created so concurrent new frames can't overshoot
+    private final AtomicInteger distinct = new AtomicInteger();
+    private volatile MeterRegistry registry;
+    private volatile RecordingStream stream;
+
+    public VirtualThreadMonitor(@Value("${mi.virtual-threads.monitor.enabled:true}") boolean enabled,
+                                @Value("${mi.virtual-threads.monitor.pinned-threshold:20ms}") Duration pinnedThreshold) {
+        this.enabled = enabled;
+        this.pinnedThreshold = pinnedThreshold;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        var recording = new RecordingStream();
+        recording.enable(PINNED).withThreshold(pinnedThreshold).withStackTrace();
+        recording.enable(SUBMIT_FAILED).withStackTrace();
+        //Only these two events are recorded, a short window on disk is enough
+        recording.setMaxAge(Duration.ofSeconds(30));
+        recording.onEvent(PINNED, this::onEvent);
+        recording.onEvent(SUBMIT_FAILED, this::onEvent);
+        recording.startAsync();
+        stream = recording;
+        log.info("Virtual thread monitor started, pinning over {} is recorded", pinnedThreshold);
+    }
+
+    @Override
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return stream != null;
+    }
+
+    //Worst first
+    public List<FrameStats.Snapshot> snapshot() {
+        return frames.values().stream()
+                .map(FrameStats::snapshot)
+                .sorted(Comparator.comparingLong(FrameStats.Snapshot::totalMillis).thenComparingLong(FrameStats.Snapshot::count).reversed())
+                .toList();
+    }
+
+    public void reset() {
+        frames.clear();
+        distinct.set(0);
+    }
+
+    private void onEvent(RecordedEvent event) {
+        var type = event.getEventType().getName();
+        var stack = event.getStackTrace() == null ? List.<RecordedFrame>of() : event.getStackTrace().getFrames();
+        var frame = applicationFrame(stack);
+        var key = type + " " + frame;
+
+        //Bounded to MAX_FRAMES entries plus one OTHER per event type, where a flood of distinct frames ends up
+        var stats = frames.get(key);
+        if (stats == null) {
+            var sample = stack.stream().limit(SAMPLE_STACK_DEPTH).map(VirtualThreadMonitor::format).toList();
+            var newFrame = frame;
+            stats = frames.computeIfAbsent(key, k -> reserve() ? new FrameStats(type, newFrame, sample) : null);
+            if (stats == null) {
+                frame = OTHER;
+                stats = frames.computeIfAbsent(type + " " + OTHER, k -> new FrameStats(type, OTHER, sample));
+            }
+        }
+        stats.record(event.getDuration());
+
+        var meters = registry;
+        if (meters != null) {
+            if (PINNED.equals(type)) {
+                Timer.builder("jvm.threads.virtual.pinned")
+                        .description("Virtual threads pinned to their carrier over the threshold, by application frame")
+                        .tag("frame", frame)
+                        .register(meters)
+                        .record(event.getDuration());
+            } else {
+                Counter.builder("jvm.threads.virtual.submit.failed")
+                        .tag("frame", frame)
+                        .register(meters)
+                        .increment();
+            }
+        }
+    }
+
+    private boolean reserve() {
+        return distinct.getAndUpdate(current -> current < MAX_FRAMES ? current + 1 : current) < MAX_FRAMES;
+    }
+
+    //First frame out of the JDK, the one we can change. The top frame when the whole stack is JDK code
+    private static String applicationFrame(List<RecordedFrame> stack) {
+        for (var frame : stack) {
+            var type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.") && !type.startsWith("com.sun.")) {
+                return format(frame);
+            }
+        }
+        return stack.isEmpty() ? "unknown" : format(stack.getFirst());
+    }
+
+    private static String format(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    public static final class FrameStats {
+        private final String event;
+        private final String frame;
+        private final List<String> sampleStack;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        FrameStats(String event, String frame, List<String> sampleStack) {
+            this.event = event;
+            this.frame = frame;
+            this.sampleStack = sampleStack;
+        }
+
+        void record(Duration duration) {
+            count.increment();
+            totalNanos.add(duration.toNanos());
+            maxNanos.accumulate(duration.toNanos());
+        }
+
+        Snapshot snapshot() {
+            return new Snapshot(event, frame, count.sum(), Duration.ofNanos(totalNanos.sum()).toMillis(), Duration.ofNanos(maxNanos.get()).toMillis(), sampleStack);
+        }
+
+        public record Snapshot(String event, String frame, long count, long totalMillis, long maxMillis, List<String> sampleStack) {
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package jon.modern_infra.help;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+//GET for the pinning and submit failures by frame since start (or the last DELETE)
+@Component
+@Endpoint(id = "virtualthreads")
+@RequiredArgsConstructor
+class VirtualThreadsEndpoint {
+    private final VirtualThreadMonitor monitor;
+
+    @ReadOperation
+    public List<VirtualThreadMonitor.FrameStats.Snapshot> frames() {
+        return monitor.snapshot();
+    }
+
+    @DeleteOperation
+    public void reset() {
+        monitor.reset();
+    }
+}
@@ -0,0 +1,60 @@
+package jon.modern_infra.open_api;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+@Repository
+@RequiredArgsConstructor
+class AccountRepo {
+    //Last write wins, the request carries the whole state of the account
+    private static final String UPSERT = """
+            INSERT INTO mi.accounts (account_number, balance, currency, status, account_type, date_of_creation, modified_at)
+            VALUES (:accountNumber, :balance, :currency, :status, :accountType, :dateOfCreation, :modifiedAt)
+            ON CONFLICT (account_number) DO UPDATE SET
+                balance = EXCLUDED.balance,
+                currency = EXCLUDED.currency,
+                status = EXCLUDED.status,
+                account_type = EXCLUDED.account_type,
+                date_of_creation = EXCLUDED.date_of_creation,
+                modified_at = EXCLUDED.modified_at
+            """;
+
+    private static final String DEAD_LETTER = """
+            INSERT INTO mi.accounts_dead_letter (account_number, balance, currency, status, account_type, date_of_creation, error, failed_at)
+            VALUES (:accountNumber, :balance, :currency, :status, :accountType, :dateOfCreation, :error, :modifiedAt)
+            """;
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    void upsert(OpenAPIExample.Request request) {
+        jdbc.update(UPSERT, toParams(request, Timestamp.valueOf(LocalDateTime.now())));
+    }
+
+    //One round trip per batch, not per account
+    void upsertAll(Collection<OpenAPIExample.Request> requests) {
+        var now = Timestamp.valueOf(LocalDateTime.now());
+        jdbc.batchUpdate(UPSERT, requests.stream().map(request -> toParams(request, now)).toArray(SqlParameterSource[]::new));
+    }
+
+    void deadLetter(OpenAPIExample.Request request, String error) {
+        jdbc.update(DEAD_LETTER, toParams(request, Timestamp.valueOf(LocalDateTime.now())).addValue("error", error));
+    }
+
+    private static MapSqlParameterSource toParams(OpenAPIExample.Request request, Timestamp modifiedAt) {
+        return new MapSqlParameterSource()
+                .addValue("accountNumber", request.accountNumber())
+                .addValue("balance", request.balance())
+                .addValue("currency", request.currency())
+                .addValue("status", request.status())
+                .addValue("accountType", request.accountType())
+                .addValue("dateOfCreation", request.dateOfCreation() == null ? null : Timestamp.valueOf(request.dateOfCreation()))
+                .addValue("modifiedAt", modifiedAt);
+    }
+}
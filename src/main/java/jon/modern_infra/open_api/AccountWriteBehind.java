@@ -0,0 +1,262 @@
+package jon.modern_infra.open_api;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Write-behind for account updates. Only the latest state of an account matters, so pending updates are coalesced
+//by account number and written in JDBC batches every flush interval or as soon as batch size accounts are pending.
+//Memory is bounded by max pending accounts, over that offer() refuses and the caller answers 429.
+//Acknowledged updates live only in memory until flushed, a crash loses them, a graceful shutdown does not.
+//A failed batch is retried row by row: rows the database rejects go to mi.accounts_dead_letter so one bad row can't
+//block the others. Any other error (database down...) keeps every row pending and the scheduled flushes back off,
+//meanwhile the buffer fills up and offer() answers 429
+@Slf4j
+@Component
+class AccountWriteBehind implements DisposableBean {
+    private final AccountRepo accountRepo;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxPending;
+    private final Duration flushInterval;
+    private final Duration maxBackoff;
+
+    private final ConcurrentHashMap<String, OpenAPIExample.Request> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    //Updates accepted since the last flush, against the rows written gives the coalescing ratio
+    private final LongAdder received = new LongAdder();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService scheduler;
+    //Consecutive failed flushes, guarded by flushLock. Scheduled flushes are skipped until retryAt
+    private int failures;
+    private volatile long retryAt = System.nanoTime();
+
+    private final Counter rejected;
+    private final Counter deadLettered;
+    private final Timer flushLatency;
+    private final DistributionSummary batchSizes;
+    private final DistributionSummary coalescingRatio;
+
+    public AccountWriteBehind(AccountRepo accountRepo,
+                              MeterRegistry meterRegistry,
+                              @Value("${mi.accounts.write-behind.enabled:false}") boolean enabled,
+                              @Value("${mi.accounts.write-behind.batch-size:500}") int batchSize,
+                              @Value("${mi.accounts.write-behind.max-pending:100000}") int maxPending,
+                              @Value("${mi.accounts.write-behind.flush-interval:200ms}") Duration flushInterval,
+                              @Value("${mi.accounts.write-behind.max-backoff:30s}") Duration maxBackoff) {
+        this.accountRepo = accountRepo;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.flushInterval = flushInterval;
+        this.maxBackoff = maxBackoff;
+
+        Gauge.builder("account.updates.pending", size, AtomicInteger::get)
+                .description("Accounts waiting to be written")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("account.updates.rejected")
+                .description("Updates refused with 429 because the pending buffer was full")
+                .register(meterRegistry);
+        this.deadLettered = Counter.builder("account.updates.dead.lettered")
+                .description("Updates rejected by the database, kept in mi.accounts_dead_letter or the log")
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("account.updates.flush")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("account.updates.batch.size")
+                .baseUnit("rows")
+                .register(meterRegistry);
+        this.coalescingRatio = DistributionSummary.builder("account.updates.coalescing.ratio")
+                .description("Updates received per row written")
+                .register(meterRegistry);
+
+        if (enabled) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("account-write-behind").daemon().factory());
+            scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    boolean enabled() {
+        return enabled;
+    }
+
+    //False when the buffer is full, an update for an account already pending always fits
+    boolean offer(OpenAPIExample.Request request) {
+        var stored = pending.compute(request.accountNumber(), (accountNumber, previous) -> previous != null || reserve() ? request : null);
+        if (stored == null) {
+            rejected.increment();
+            return false;
+        }
+        received.increment();
+
+        if (size.get() >= batchSize && !scheduler.isShutdown() && flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flushQuietly);
+            } catch (RejectedExecutionException shuttingDown) {
+                //The update is stored, the final flush in destroy() writes it
+                flushRequested.set(false);
+            }
+        }
+        return true;
+    }
+
+    int pending() {
+        return size.get();
+    }
+
+    void flush() {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+            var start = System.nanoTime();
+            var written = 0;
+
+            try {
+                while (!pending.isEmpty()) {
+                    var batch = drain();
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    try {
+                        accountRepo.upsertAll(batch);
+                        written += batch.size();
+                    } catch (RuntimeException ex) {
+                        log.warn("Account updates batch of {} failed, retrying one by one", batch.size(), ex);
+                        written += writeOneByOne(batch);
+                    }
+                    batchSizes.record(batch.size());
+                }
+                failures = 0;
+            } catch (RuntimeException ex) {
+                failures++;
+                retryAt = System.nanoTime() + retryDelay().toNanos();
+                throw ex;
+            }
+
+            if (written > 0) {
+                flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                coalescingRatio.record((double) received.sumThenReset() / written);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    //Stop the timer first so the final flush is the last one
+    @Override
+    public void destroy() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+        log.info("Account updates flushed on shutdown");
+    }
+
+    //Flush interval doubled per consecutive failure, up to max backoff
+    Duration retryDelay() {
+        flushLock.lock();
+        try {
+            if (failures == 0) {
+                return Duration.ZERO;
+            }
+            var delay = flushInterval.multipliedBy(1L << Math.min(failures, 20));
+            return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private boolean reserve() {
+        return size.getAndUpdate(current -> current < maxPending ? current + 1 : current) < maxPending;
+    }
+
+    private List<OpenAPIExample.Request> drain() {
+        var batch = new ArrayList<OpenAPIExample.Request>(Math.min(batchSize, size.get()));
+        for (var accountNumber : pending.keySet()) {
+            if (batch.size() == batchSize) {
+                break;
+            }
+            var request = pending.remove(accountNumber);
+            if (request != null) {
+                size.decrementAndGet();
+                batch.add(request);
+            }
+        }
+        return batch;
+    }
+
+    //Rows the database rejects are dead lettered. Any other error (database down...) would fail the rest too,
+    //they go back to the buffer, however many times it takes, and the error is rethrown
+    private int writeOneByOne(List<OpenAPIExample.Request> batch) {
+        var written = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            var request = batch.get(i);
+            try {
+                accountRepo.upsert(request);
+                written++;
+            } catch (DataIntegrityViolationException ex) {
+                deadLetter(request, ex);
+            } catch (RuntimeException ex) {
+                requeue(batch.subList(i, batch.size()));
+                throw ex;
+            }
+        }
+        return written;
+    }
+
+    //A newer update that arrived meanwhile wins. May go over max pending by one batch, better than losing acknowledged updates
+    private void requeue(List<OpenAPIExample.Request> rows) {
+        for (var request : rows) {
+            if (pending.putIfAbsent(request.accountNumber(), request) == null) {
+                size.incrementAndGet();
+            }
+        }
+    }
+
+    //Only for rows the database refused, so the table is normally reachable. If not, the log is the only copy left
+    private void deadLetter(OpenAPIExample.Request request, RuntimeException cause) {
+        deadLettered.increment();
+        try {
+            accountRepo.deadLetter(request, String.valueOf(cause.getMessage()));
+            log.error("Account update dead lettered: {}", request, cause);
+        } catch (RuntimeException ex) {
+            log.error("Account update lost, dead letter table not writable: {}", request, ex);
+        }
+    }
+
+    private void flushQuietly() {
+        if (System.nanoTime() - retryAt < 0) {
+            return;
+        }
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            log.error("Account updates flush failed, {} accounts kept, next attempt in {}", size.get(), retryDelay(), ex);
+        }
+    }
+}
@@ -3,10 +3,15 @@ package jon.modern_infra.open_api;
 import io.micrometer.observation.annotation.Observed;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -22,12 +27,25 @@ import java.time.LocalDateTime;
 @RequiredArgsConstructor
 @Slf4j
 class OpenAPIExample {
+    private final AccountRepo accountRepo;
+    private final AccountWriteBehind accountWriteBehind;
 
     @Operation(description = "Update Account")
     @PutMapping(produces = {MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<Void> updateAccount(@RequestBody Request request) {
-        log.info("BEGIN Updating account with number {} with this JSON: {}", request.accountNumber(), request);
-        //...
+    public ResponseEntity<Void> updateAccount(@Valid @RequestBody Request request) {
+        log.info("BEGIN Updating account with number {}", request.accountNumber());
+
+        //Write-behind: 202 once buffered, the write happens in the next batch
+        if (accountWriteBehind.enabled()) {
+            if (!accountWriteBehind.offer(request)) {
+                log.warn("END Account with number {} rejected, pending updates buffer full", request.accountNumber());
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").build();
+            }
+            log.info("END Account with number {} queued", request.accountNumber());
+            return ResponseEntity.accepted().build();
+        }
+
+        accountRepo.upsert(request);
         log.info("END Account with number {} updated", request.accountNumber());
         return ResponseEntity.ok().build();
     }
@@ -36,20 +54,25 @@ class OpenAPIExample {
     record Request(
             @Schema(description = "Account number", example = "1234567890")
             @NotBlank(message = "Account number is required")
+            @Size(max = 50)
             String accountNumber,
 
             @Schema(description = "Account balance", example = "1000.50")
             @DecimalMin(value = "0.0", message = "Balance cannot be negative")
+            @Digits(integer = 17, fraction = 2)
             BigDecimal balance,
 
             @Schema(description = "Account currency", example = "USD")
             @NotBlank(message = "Currency is required")
+            @Size(min = 3, max = 3, message = "Currency must be an ISO 4217 code")
             String currency,
 
             @Schema(description = "Account status", example = "ACTIVE")
+            @Size(max = 50)
             String status,
 
             @Schema(description = "Account type", example = "SAVINGS")
+            @Size(max = 50)
             String accountType,
 
             @Schema(description = "Date of creation", example = "2022-01-01T00:00:00")
@@ -0,0 +1,146 @@
+package jon.modern_infra.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.RegisteredClaims;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//Verifies bearer tokens and maps them to the principal UserAuditListener expects: username from preferred_username
+//or sub, roles as ROLE_x and the user id as the UUID:<sub> authority.
+//The signature check is the expensive part, so verified tokens are cached by SHA-256 until they expire.
+//The hash keeps raw tokens out of the heap and makes keys the same size no matter how big the token is
+class JwtAuthenticator {
+    static final String UUID_AUTHORITY = "UUID:";
+
+    @Nullable private final JWTVerifier verifier;
+    private final String rolesClaim;
+    private final Duration maxTtl;
+    @Nullable private final Cache<String, Verified> cache;
+
+    JwtAuthenticator(@Nullable Algorithm algorithm, JwtProperties properties, MeterRegistry meterRegistry) {
+        this.verifier = algorithm == null ? null : verifier(algorithm, properties);
+        this.rolesClaim = properties.rolesClaim();
+        this.maxTtl = properties.cache().maxTtl();
+
+        if (properties.cache().enabled()) {
+            this.cache = Caffeine.newBuilder()
+                    .maximumSize(properties.cache().maximumSize())
+                    .expireAfter(Expiry.<String, Verified>creating((hash, verified) -> verified.ttl()))
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt.verified");
+        } else {
+            this.cache = null;
+        }
+    }
+
+    //Throws JWTVerificationException for bad signature, issuer, missing exp or expired tokens. Failures are never cached
+    Authentication authenticate(String token) {
+        if (cache == null) {
+            return verify(token).authentication();
+        }
+        return cache.get(hash(token), hash -> verify(token)).authentication();
+    }
+
+    private Verified verify(String token) {
+        if (verifier == null) {
+            throw new JWTVerificationException("No public key configured to verify tokens");
+        }
+        var jwt = verifier.verify(token);
+        var ttl = Duration.between(Instant.now(), jwt.getExpiresAtAsInstant());
+        //Inside the leeway the token is valid but already past exp, it is not worth caching
+        return new Verified(toAuthentication(jwt), ttl.isNegative() ? Duration.ZERO : ttl.compareTo(maxTtl) > 0 ? maxTtl : ttl);
+    }
+
+    //Shared by every request with the same token, nothing mutable is set on it afterwards
+    private Authentication toAuthentication(DecodedJWT jwt) {
+        var authorities = new ArrayList<GrantedAuthority>();
+        var roles = jwt.getClaim(rolesClaim).asList(String.class);
+        if (roles != null) {
+            roles.forEach(role -> authorities.add(new SimpleGrantedAuthority("ROLE_" + role)));
+        }
+        if (jwt.getSubject() != null) {
+            authorities.add(new SimpleGrantedAuthority(UUID_AUTHORITY + jwt.getSubject()));
+        }
+
+        var username = jwt.getClaim("preferred_username").isMissing() ? jwt.getSubject() : jwt.getClaim("preferred_username").asString();
+        if (username == null) {
+            throw new JWTVerificationException("Token without sub nor preferred_username");
+        }
+        var principal = User.withUsername(username).password("").authorities(authorities).build();
+        return UsernamePasswordAuthenticationToken.authenticated(principal, null, authorities);
+    }
+
+    private static JWTVerifier verifier(Algorithm algorithm, JwtProperties properties) {
+        //A token without exp never expires, it would stay valid (and cached) forever once leaked
+        var verification = JWT.require(algorithm)
+                .withClaimPresence(RegisteredClaims.EXPIRES_AT)
+                .acceptLeeway(properties.leeway().toSeconds());
+        if (properties.issuer() != null) {
+            verification.withIssuer(properties.issuer());
+        }
+        return verification.build();
+    }
+
+    private static String hash(String token) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    //RS256 for RSA keys, ES256 for EC ones
+    @Nullable
+    static Algorithm algorithm(@Nullable Resource publicKeyPem) {
+        if (publicKeyPem == null) {
+            return null;
+        }
+        try {
+            var der = Base64.getMimeDecoder().decode(publicKeyPem.getContentAsString(US_ASCII).replaceAll("-----[A-Z ]+-----", ""));
+            var spec = new X509EncodedKeySpec(der);
+            try {
+                return Algorithm.RSA256((RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(spec), null);
+            } catch (InvalidKeySpecException notRsa) {
+                return Algorithm.ECDSA256((ECPublicKey) KeyFactory.getInstance("EC").generatePublic(spec), null);
+            }
+        } catch (IOException | GeneralSecurityException ex) {
+            throw new IllegalStateException("Invalid JWT public key " + publicKeyPem, ex);
+        }
+    }
+
+    private record Verified(Authentication authentication, Duration ttl) {
+    }
+}
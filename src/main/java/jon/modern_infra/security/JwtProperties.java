@@ -0,0 +1,27 @@
+package jon.modern_infra.security;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+
+@ConfigurationProperties("mi.security.jwt")
+record JwtProperties(
+        //PEM with the RSA or EC public key, the algorithm (RS256 or ES256) follows the key. Without it every bearer token is rejected
+        @Nullable Resource publicKey,
+        @Nullable String issuer,
+        @DefaultValue("30s") Duration leeway,
+        //Claim with the role names, each one becomes ROLE_<name>
+        @DefaultValue("roles") String rolesClaim,
+        @DefaultValue Cache cache
+) {
+    record Cache(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("100000") long maximumSize,
+            //Cap on how long a verified token is cached, even if its exp is later
+            @DefaultValue("5m") Duration maxTtl
+    ) {
+    }
+}
@@ -1,22 +1,46 @@
 package jon.modern_infra.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.AnonymousAuthenticationFilter;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
 
 @Configuration
+@EnableConfigurationProperties(JwtProperties.class)
 public class SecurityConfig {
+    //Granted by the identity provider in the roles claim
+    public static final String EXPORT_ROLE = "EXPORT";
+    public static final String IMPORT_ROLE = "IMPORT";
 
+    //The filter is not a bean on purpose, Boot would also register it in the servlet container and it would run twice
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, JwtAuthenticator jwtAuthenticator) throws Exception {
         http
                 .csrf(AbstractHttpConfigurer::disable)
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .addFilterBefore(new JwtAuthenticationFilter(jwtAuthenticator), AnonymousAuthenticationFilter.class)
+                .exceptionHandling(exceptions -> exceptions.authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED)))
                 // Configura las demás opciones de seguridad según tus necesidades
                 .authorizeHttpRequests(auth -> auth
+                        .requestMatchers("/authRequired/**").authenticated()
+                        //Every user with their email and phone numbers in one response, not for any signed-in user
+                        .requestMatchers("/users/export").hasRole(EXPORT_ROLE)
+                        //Bulk writes of users, started and followed by an operator
+                        .requestMatchers("/batch/**").hasRole(IMPORT_ROLE)
                         .anyRequest().permitAll()
                 );
         return http.build();
     }
+
+    @Bean
+    JwtAuthenticator jwtAuthenticator(JwtProperties properties, MeterRegistry meterRegistry) {
+        return new JwtAuthenticator(JwtAuthenticator.algorithm(properties.publicKey()), properties, meterRegistry);
+    }
 }
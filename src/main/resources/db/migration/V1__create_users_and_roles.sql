@@ -0,0 +1,24 @@
+CREATE SCHEMA IF NOT EXISTS mi;
+
+CREATE TABLE IF NOT EXISTS mi.roles
+(
+    role_code   VARCHAR(50) PRIMARY KEY,
+    description VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS mi.users
+(
+    user_id       UUID PRIMARY KEY,
+    realname      VARCHAR(255),
+    username      VARCHAR(255) NOT NULL,
+    email         VARCHAR(255) NOT NULL,
+    password      VARCHAR(255) NOT NULL,
+    phone_numbers TEXT[],
+    role_code     VARCHAR(50) REFERENCES mi.roles (role_code),
+    version       INTEGER,
+    created_by    VARCHAR(255),
+    created_at    TIMESTAMP,
+    modified_by   VARCHAR(255),
+    modified_at   TIMESTAMP,
+    deleted       BOOLEAN DEFAULT FALSE
+);
@@ -0,0 +1,10 @@
+CREATE TABLE IF NOT EXISTS mi.accounts
+(
+    account_number   VARCHAR(50) PRIMARY KEY,
+    balance          NUMERIC(19, 2),
+    currency         VARCHAR(3)  NOT NULL,
+    status           VARCHAR(50),
+    account_type     VARCHAR(50),
+    date_of_creation TIMESTAMP,
+    modified_at      TIMESTAMP
+);
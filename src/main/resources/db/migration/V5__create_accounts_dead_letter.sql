@@ -0,0 +1,13 @@
+-- Account updates write-behind could not write, as received, to be fixed and replayed by hand
+CREATE TABLE IF NOT EXISTS mi.accounts_dead_letter
+(
+    id               BIGSERIAL PRIMARY KEY,
+    account_number   TEXT,
+    balance          NUMERIC,
+    currency         TEXT,
+    status           TEXT,
+    account_type     TEXT,
+    date_of_creation TIMESTAMP,
+    error            TEXT,
+    failed_at        TIMESTAMP NOT NULL
+);
@@ -0,0 +1,84 @@
+package jon.modern_infra;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Point in time balance with millions of movements on one account: snapshot + daily deltas vs. replaying every movement
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class BalanceEngineBenchmark {
+    private static final String ACCOUNT = "ES-0001";
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+    private static final int DAYS = 5 * 365;
+
+    @Param({"1000000", "5000000"})
+    private int movements;
+
+    private BalanceEngine engine;
+    //What a replay reads, movements in arrival order
+    private LocalDate[] dates;
+    private BigDecimal[] amounts;
+
+    @Setup(Level.Trial)
+    public void loadMovements() {
+        engine = new BalanceEngine();
+        dates = new LocalDate[movements];
+        amounts = new BigDecimal[movements];
+
+        var random = new SplittableRandom(42);
+        for (int i = 0; i < movements; i++) {
+            dates[i] = FIRST_DAY.plusDays((long) i * DAYS / movements);
+            amounts[i] = BigDecimal.valueOf(random.nextLong(-50_000, 100_000), BalanceEngine.SCALE);
+            engine.apply(ACCOUNT, dates[i], amounts[i]);
+        }
+    }
+
+    private static LocalDate randomDay() {
+        return FIRST_DAY.plusDays(ThreadLocalRandom.current().nextInt(DAYS));
+    }
+
+    @Benchmark
+    public BigDecimal snapshot() {
+        return engine.balanceAt(ACCOUNT, randomDay());
+    }
+
+    @Benchmark
+    public BigDecimal replay() {
+        var day = randomDay();
+        var balance = BigDecimal.ZERO;
+        for (int i = 0; i < dates.length && dates[i].isBefore(day); i++) {
+            balance = balance.add(amounts[i]);
+        }
+        return balance;
+    }
+
+    @Benchmark
+    public BigDecimal startOfYear() {
+        return engine.balanceAt(ACCOUNT, randomDay().withDayOfYear(1));
+    }
+
+    @Benchmark
+    public void apply() {
+        engine.apply(ACCOUNT, randomDay(), ThreadLocalRandom.current().nextLong(-50_000, 100_000));
+    }
+}
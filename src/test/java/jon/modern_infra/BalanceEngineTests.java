@@ -0,0 +1,58 @@
+package jon.modern_infra;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BalanceEngineTests {
+    private static final String ACCOUNT = "ES-0001";
+
+    private final BalanceEngine engine = new BalanceEngine();
+
+    @Test
+    void lateMovementBeforeAnExistingSnapshotMovesEveryLaterOpening() {
+        engine.apply(ACCOUNT, LocalDate.of(2025, 3, 10), new BigDecimal("100.00"));
+        engine.apply(ACCOUNT, LocalDate.of(2025, 5, 2), new BigDecimal("10.00"));
+
+        engine.apply(ACCOUNT, LocalDate.of(2025, 1, 15), new BigDecimal("50.00"));
+
+        assertThat(engine.balanceAt(ACCOUNT, LocalDate.of(2025, 1, 15))).isEqualByComparingTo("0");
+        assertThat(engine.balanceAt(ACCOUNT, LocalDate.of(2025, 2, 1))).isEqualByComparingTo("50");
+        assertThat(engine.balanceAt(ACCOUNT, LocalDate.of(2025, 3, 1))).isEqualByComparingTo("50");
+        assertThat(engine.balanceAt(ACCOUNT, LocalDate.of(2025, 3, 11))).isEqualByComparingTo("150");
+        assertThat(engine.balanceAt(ACCOUNT, LocalDate.of(2025, 4, 20))).isEqualByComparingTo("150");
+        assertThat(engine.balanceAt(ACCOUNT, LocalDate.of(2025, 5, 3))).isEqualByComparingTo("160");
+        assertThat(engine.balance(ACCOUNT)).isEqualByComparingTo("160");
+    }
+
+    @Test
+    void movementOnASnapshotDateCountsFromTheNextDay() {
+        engine.apply(ACCOUNT, LocalDate.of(2025, 1, 20), new BigDecimal("40.00"));
+        engine.apply(ACCOUNT, LocalDate.of(2025, 2, 1), new BigDecimal("-15.25"));
+
+        assertThat(engine.balanceAt(ACCOUNT, LocalDate.of(2025, 2, 1))).isEqualByComparingTo("40");
+        assertThat(engine.balanceAt(ACCOUNT, LocalDate.of(2025, 2, 2))).isEqualByComparingTo("24.75");
+    }
+
+    @Test
+    void yearStartBalanceIncludesLastYearOnly() {
+        engine.apply(ACCOUNT, LocalDate.of(2024, 6, 1), new BigDecimal("1000"));
+        engine.apply(ACCOUNT, LocalDate.of(2024, 12, 31), new BigDecimal("-0.5"));
+        engine.apply(ACCOUNT, LocalDate.of(2025, 1, 1), new BigDecimal("200"));
+        engine.apply(ACCOUNT, LocalDate.of(2025, 7, 1), new BigDecimal("300"));
+
+        assertThat(engine.balanceAt(ACCOUNT, LocalDate.of(2025, 1, 1))).isEqualByComparingTo("999.50");
+        assertThat(engine.balanceAt("unknown", LocalDate.of(2025, 1, 1))).isEqualByComparingTo("0");
+    }
+
+    @Test
+    void amountsWithMoreThanTwoDecimalsAreRejectedNotRounded() {
+        assertThat(BalanceEngine.toCents(new BigDecimal("2.500"))).isEqualTo(250);
+        assertThat(BalanceEngine.hasValidScale(new BigDecimal("1.005"))).isFalse();
+        assertThatThrownBy(() -> BalanceEngine.toCents(new BigDecimal("1.005"))).isInstanceOf(IllegalArgumentException.class);
+    }
+}
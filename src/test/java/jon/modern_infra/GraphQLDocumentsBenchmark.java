@@ -0,0 +1,88 @@
+package jon.modern_infra;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.execution.instrumentation.ChainedInstrumentation;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jon.modern_infra.common.store.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.graphql.data.pagination.ConnectionTypeDefinitionConfigurer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//Requests per second of userById with the depth and complexity limits on: parsed and validated every time (none),
+//from the document cache with the full text (cached) and as an automatic persisted query sending only the hash (persisted)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+public class GraphQLDocumentsBenchmark {
+    private static final String USER_BY_ID = """
+            query userById($id: String!) {
+              userById(id: $id) { id realname username email status phoneNumbers }
+            }
+            """;
+
+    @Param({"none", "cached", "persisted"})
+    private String documents;
+
+    private GraphQL graphQL;
+    private Supplier<ExecutionInput> request;
+
+    @Setup
+    public void setUp() throws IOException {
+        var user = User.Factory.register(UUID.randomUUID(), User.RealName.of("Jon Snow"), User.UserName.of("jon"), User.Email.of("jon@mi.com"), User.Password.of("secret"), User.PhoneNumbers.of(List.of("600000000")));
+
+        var registry = new SchemaParser().parse(new ClassPathResource("graphql/schema.graphqls").getInputStream());
+        new ConnectionTypeDefinitionConfigurer().configure(registry);
+        var wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("userById", env -> user))
+                .build();
+
+        var config = new GraphQLConfig();
+        var builder = GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(registry, wiring))
+                .instrumentation(new ChainedInstrumentation(List.of(config.maxQueryDepth(10), config.maxQueryComplexity(2000))));
+        if (!"none".equals(documents)) {
+            builder.preparsedDocumentProvider(new GraphQLConfig.PersistedDocuments(1000, new SimpleMeterRegistry()));
+        }
+        graphQL = builder.build();
+
+        var variables = Map.<String, Object>of("id", user.id().toString());
+        var extensions = Map.<String, Object>of("persistedQuery", Map.of("version", 1, "sha256Hash", GraphQLConfig.PersistedDocuments.sha256(USER_BY_ID)));
+        //Registers the hash, like the first request of an APQ client
+        graphQL.execute(ExecutionInput.newExecutionInput(USER_BY_ID).variables(variables).extensions(extensions));
+        //A new input per request, it carries the GraphQLContext of the execution
+        request = "persisted".equals(documents)
+                ? () -> ExecutionInput.newExecutionInput("").variables(variables).extensions(extensions).build()
+                : () -> ExecutionInput.newExecutionInput(USER_BY_ID).variables(variables).build();
+    }
+
+    @Benchmark
+    public ExecutionResult userById() {
+        return graphQL.execute(request.get());
+    }
+}
@@ -0,0 +1,168 @@
+package jon.modern_infra;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.graphql.tester.AutoConfigureGraphQlTester;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.graphql.execution.ErrorType;
+import org.springframework.graphql.test.tester.GraphQlTester;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest
+@AutoConfigureGraphQlTester
+class GraphQLExampleTests {
+    private static final String FIRST_PAGE = """
+            query {
+              users(first: 50) {
+                edges { cursor node { id username email } }
+                pageInfo { hasNextPage endCursor }
+              }
+            }
+            """;
+
+    @Autowired private GraphQlTester graphQlTester;
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private MeterRegistry meterRegistry;
+
+    @Test
+    void usersFirstPageAllocationStaysFlatWhenTheTableGrows() {
+        seedUsers(1_000);
+        var smallTable = minAllocatedBytes(() -> graphQlTester.document(FIRST_PAGE).execute().path("users.edges").entityList(Object.class).hasSize(50));
+
+        seedUsers(200_000);
+        var bigTable = minAllocatedBytes(() -> graphQlTester.document(FIRST_PAGE).execute().path("users.edges").entityList(Object.class).hasSize(50));
+
+        //200x more rows, the page costs the same. Loading the whole table would be orders of magnitude bigger
+        assertThat(bigTable).isLessThan(smallTable * 2);
+    }
+
+    @Test
+    void usersCanBeWalkedWithTheCursor() {
+        seedUsers(30);
+
+        var endCursor = graphQlTester.document("query { users(first: 10) { pageInfo { hasNextPage endCursor } } }")
+                .execute()
+                .path("users.pageInfo.hasNextPage").entity(Boolean.class).isEqualTo(true)
+                .path("users.pageInfo.endCursor").entity(String.class).get();
+
+        graphQlTester.document("query($after: String) { users(first: 10, after: $after) { edges { node { id } } } }")
+                .variable("after", endCursor)
+                .execute()
+                .path("users.edges").entityList(Object.class).hasSize(10);
+    }
+
+    @Test
+    void negativePageSizeIsAClientError() {
+        graphQlTester.document("query { users(first: -5) { edges { node { id } } } }")
+                .execute()
+                .errors().satisfy(errors -> assertThat(errors).singleElement().satisfies(error -> {
+                    assertThat(error.getMessage()).contains("'first' must not be negative");
+                    assertThat(error.getErrorType()).isNotEqualTo(ErrorType.INTERNAL_ERROR);
+                }));
+    }
+
+    @Test
+    void negativePageSizeCantOffsetTheComplexityOfASibling() {
+        //801 each, over the 2000 limit on their own. The negative alias used to bring the total back under it
+        graphQlTester.document("""
+                        query {
+                          a: users(first: 100) { edges { node { id username email role { code name } } } }
+                          b: users(first: 100) { edges { node { id username email role { code name } } } }
+                          c: users(first: 100) { edges { node { id username email role { code name } } } }
+                          d: users(first: -10000) { edges { node { id username email role { code name } } } }
+                        }
+                        """)
+                .execute()
+                .errors().satisfy(errors -> assertThat(errors).isNotEmpty()
+                        .allSatisfy(error -> assertThat(error.getErrorType()).isNotEqualTo(ErrorType.INTERNAL_ERROR)))
+                .path("a").pathDoesNotExist();
+    }
+
+    @Test
+    void usersWithRoleRunAFixedNumberOfStatementsTaggedByOperationType() {
+        jdbcTemplate.update("INSERT INTO mi.roles (role_code, description) VALUES ('ADMIN', 'Admin'), ('USER', 'User') ON CONFLICT DO NOTHING");
+        seedUsers(100);
+        jdbcTemplate.update("UPDATE mi.users SET role_code = CASE WHEN random() < 0.5 THEN 'ADMIN' ELSE 'USER' END WHERE role_code IS NULL");
+        //Warms RoleCache, afterwards a page is one statement whatever its size
+        usersWithRole(50);
+
+        var small = usersWithRole(5);
+        var big = usersWithRole(50);
+
+        assertThat(small).isEqualTo(1);
+        assertThat(big).isEqualTo(small);
+    }
+
+    //Statements recorded for one operation. The client's operation name changes on every call and is not a tag
+    private double usersWithRole(int first) {
+        var summary = meterRegistry.find("graphql.operation.sql.statements").tag("operation", "query users").summary();
+        var countBefore = summary == null ? 0 : summary.count();
+        var totalBefore = summary == null ? 0 : summary.totalAmount();
+
+        graphQlTester.document("query Page" + UUID.randomUUID().toString().replace("-", "") + "($first: Int) { users(first: $first) { edges { node { id role { code name } } } } }")
+                .variable("first", first)
+                .execute()
+                .path("users.edges").entityList(Object.class).hasSize(first)
+                .path("users.edges[*].node.role.code").entityList(String.class).hasSize(first);
+
+        var after = meterRegistry.get("graphql.operation.sql.statements").tag("operation", "query users").summary();
+        assertThat(after.count() - countBefore).isEqualTo(1);
+        return after.totalAmount() - totalBefore;
+    }
+
+    private void seedUsers(int count) {
+        var now = Timestamp.valueOf(LocalDateTime.now());
+        var batchSize = 5_000;
+
+        for (int from = 0; from < count; from += batchSize) {
+            var size = Math.min(batchSize, count - from);
+            jdbcTemplate.batchUpdate("""
+                            INSERT INTO mi.users (user_id, username, email, password, version, created_by, created_at, deleted)
+                            VALUES (?, ?, ?, ?, 0, 'seed', ?, false)
+                            """,
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            var id = UUID.randomUUID();
+                            ps.setObject(1, id);
+                            ps.setString(2, "user-" + id);
+                            ps.setString(3, id + "@mi.com");
+                            ps.setString(4, "secret");
+                            ps.setTimestamp(5, now);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return size;
+                        }
+                    });
+        }
+    }
+
+    //Allocations of the calling thread, min of several runs to get rid of JIT and GC noise
+    private static long minAllocatedBytes(Runnable request) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var threadId = Thread.currentThread().threadId();
+        var min = Long.MAX_VALUE;
+
+        for (int i = 0; i < 20; i++) {
+            var before = threads.getThreadAllocatedBytes(threadId);
+            request.run();
+            min = Math.min(min, threads.getThreadAllocatedBytes(threadId) - before);
+        }
+        return min;
+    }
+}
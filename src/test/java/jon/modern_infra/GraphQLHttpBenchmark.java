@@ -0,0 +1,106 @@
+package jon.modern_infra;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jon.modern_infra.common.store.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.graphql.data.pagination.ConnectionTypeDefinitionConfigurer;
+import org.springframework.graphql.execution.DefaultExecutionGraphQlService;
+import org.springframework.graphql.execution.GraphQlSource;
+import org.springframework.graphql.server.WebGraphQlHandler;
+import org.springframework.graphql.server.webmvc.GraphQlHttpHandler;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.function.RouterFunctions;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+//Requests per second of userById through Spring GraphQL's HTTP handler with MockMvc, so the JSON body is read as in
+//production: without PersistedQueryRequestFilter (query), with it in front of a full query (query-filtered, its cost)
+//and with it rewriting a hash-only automatic persisted query (persisted-filtered). GraphQLDocumentsBenchmark calls
+//graphql-java directly and can't see the body handling
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+public class GraphQLHttpBenchmark {
+    private static final String USER_BY_ID = "query userById($id: String!) { userById(id: $id) { id realname username email status phoneNumbers } }";
+
+    @Param({"query", "query-filtered", "persisted-filtered"})
+    private String request;
+
+    private MockMvc mockMvc;
+    private String body;
+
+    @Setup
+    public void setUp() throws Exception {
+        var user = User.Factory.register(UUID.randomUUID(), User.RealName.of("Jon Snow"), User.UserName.of("jon"), User.Email.of("jon@mi.com"), User.Password.of("secret"), User.PhoneNumbers.of(List.of("600000000")));
+
+        var registry = new SchemaParser().parse(new ClassPathResource("graphql/schema.graphqls").getInputStream());
+        new ConnectionTypeDefinitionConfigurer().configure(registry);
+        var wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("userById", env -> user))
+                .build();
+
+        var config = new GraphQLConfig();
+        var documents = new GraphQLConfig.PersistedDocuments(1000, new SimpleMeterRegistry());
+        var source = GraphQlSource.builder(new SchemaGenerator().makeExecutableSchema(registry, wiring))
+                .instrumentation(List.of(config.maxQueryDepth(10), config.maxQueryComplexity(2000), config.pageSizeValidation()))
+                .configureGraphQl(graphQl -> graphQl.preparsedDocumentProvider(documents))
+                .build();
+        var objectMapper = new ObjectMapper();
+        var handler = new GraphQlHttpHandler(WebGraphQlHandler.builder(new DefaultExecutionGraphQlService(source)).build(),
+                new MappingJackson2HttpMessageConverter(objectMapper));
+
+        var builder = MockMvcBuilders.routerFunctions(RouterFunctions.route().POST("/graphql", handler::handleRequest).build());
+        if (request.endsWith("-filtered")) {
+            builder.addFilters(new GraphQLConfig.PersistedQueryRequestFilter(objectMapper));
+        }
+        mockMvc = builder.build();
+
+        var variables = "\"variables\":{\"id\":\"" + user.id() + "\"}";
+        var extensions = "\"extensions\":{\"persistedQuery\":{\"version\":1,\"sha256Hash\":\"" + GraphQLConfig.PersistedDocuments.sha256(USER_BY_ID) + "\"}}";
+        var full = "{\"query\":\"" + USER_BY_ID + "\"," + variables + "," + extensions + "}";
+        //Registers the hash, like the first request of an APQ client
+        send(full);
+        body = "persisted-filtered".equals(request) ? "{" + variables + "," + extensions + "}" : full;
+    }
+
+    @Benchmark
+    public String userById() throws Exception {
+        return send(body);
+    }
+
+    private String send(String content) throws Exception {
+        var result = mockMvc.perform(post("/graphql").contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content(content)).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            result = mockMvc.perform(asyncDispatch(result)).andReturn();
+        }
+        return result.getResponse().getContentAsString();
+    }
+}
@@ -0,0 +1,97 @@
+package jon.modern_infra;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.persisted.PersistedQueryIdInvalid;
+import graphql.execution.preparsed.persisted.PersistedQueryNotFound;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import graphql.parser.Parser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PersistedDocumentsTests {
+    private static final String QUERY = "query { userById(id: \"1\") { id } }";
+    private static final String HASH = GraphQLConfig.PersistedDocuments.sha256(QUERY);
+
+    private final GraphQLConfig.PersistedDocuments documents = new GraphQLConfig.PersistedDocuments(100, new SimpleMeterRegistry());
+    private final AtomicInteger parsed = new AtomicInteger();
+    private final Function<ExecutionInput, PreparsedDocumentEntry> parse = input -> {
+        parsed.incrementAndGet();
+        return new PreparsedDocumentEntry(Parser.parse(input.getQuery()));
+    };
+
+    @Test
+    void unknownHashAsksForTheTextThenIsServedFromTheCache() {
+        assertThat(document("", HASH).getErrors()).singleElement().isInstanceOf(PersistedQueryNotFound.class);
+
+        var registered = document(QUERY, HASH);
+        var persisted = document("", HASH);
+
+        assertThat(persisted.getDocument()).isSameAs(registered.getDocument());
+        assertThat(parsed).hasValue(1);
+    }
+
+    @Test
+    void markerFromTheRequestFilterIsTreatedAsNoText() {
+        document(QUERY, HASH);
+
+        assertThat(document(PersistedQuerySupport.PERSISTED_QUERY_MARKER, HASH).getErrors()).isEmpty();
+        assertThat(parsed).hasValue(1);
+    }
+
+    @Test
+    void plainQueriesAreParsedOnceAndShareTheEntryWithTheirHash() {
+        var first = document(QUERY, null);
+        document(QUERY, null);
+
+        assertThat(document("", HASH).getDocument()).isSameAs(first.getDocument());
+        assertThat(parsed).hasValue(1);
+    }
+
+    @Test
+    void hashNotMatchingTheTextIsRejected() {
+        assertThat(document(QUERY, GraphQLConfig.PersistedDocuments.sha256("query { other }")).getErrors())
+                .singleElement().isInstanceOf(PersistedQueryIdInvalid.class);
+        assertThat(parsed).hasValue(0);
+    }
+
+    @Test
+    void requestFilterOnlyRewritesBodiesWithoutQuery() throws Exception {
+        var filter = new GraphQLConfig.PersistedQueryRequestFilter(new ObjectMapper());
+        var extensions = "\"extensions\":{\"persistedQuery\":{\"version\":1,\"sha256Hash\":\"" + HASH + "\"}}";
+        var plain = "{\"query\":\"query { userById(id: \\\"1\\\") { id } }\"," + extensions + "}";
+
+        assertThat(filtered(filter, plain)).isEqualTo(plain);
+        assertThat(new ObjectMapper().readTree(filtered(filter, "{" + extensions + "}")).path("query").asText())
+                .isEqualTo(PersistedQuerySupport.PERSISTED_QUERY_MARKER);
+        assertThat(filtered(filter, "not json")).isEqualTo("not json");
+    }
+
+    //What Spring GraphQL would read after the filter
+    private static String filtered(GraphQLConfig.PersistedQueryRequestFilter filter, String body) throws Exception {
+        var request = new MockHttpServletRequest("POST", "/graphql");
+        request.setContent(body.getBytes(UTF_8));
+        var seen = new AtomicReference<String>();
+        filter.doFilter(request, new MockHttpServletResponse(), (filtered, response) -> seen.set(new String(filtered.getInputStream().readAllBytes(), UTF_8)));
+        return seen.get();
+    }
+
+    private PreparsedDocumentEntry document(String query, String hash) {
+        var input = ExecutionInput.newExecutionInput(query);
+        if (hash != null) {
+            input.extensions(Map.of("persistedQuery", Map.of("version", 1, "sha256Hash", hash)));
+        }
+        return documents.getDocumentAsync(input.build(), parse).join();
+    }
+}
@@ -0,0 +1,51 @@
+package jon.modern_infra;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Automatic persisted queries as a client sends them: hash only, the full text on PersistedQueryNotFound, hash only again
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class PersistedQueriesHttpTests {
+    @LocalServerPort private int port;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void hashOnlyIsAskedForTheTextThenServedFromTheCache() throws Exception {
+        //Unique per run so no other test has cached it yet
+        var query = "query Apq" + UUID.randomUUID().toString().replace("-", "") + " { users(first: 1) { pageInfo { hasNextPage } } }";
+        var hash = GraphQLConfig.PersistedDocuments.sha256(query);
+        var extensions = "\"extensions\":{\"persistedQuery\":{\"version\":1,\"sha256Hash\":\"" + hash + "\"}}";
+
+        var notFound = post("{" + extensions + "}");
+        assertThat(notFound.statusCode()).isEqualTo(200);
+        assertThat(notFound.body()).contains("PersistedQueryNotFound").doesNotContain("\"data\"");
+
+        var registered = post("{\"query\":\"" + query + "\"," + extensions + "}");
+        assertThat(registered.statusCode()).isEqualTo(200);
+        assertThat(registered.body()).contains("\"hasNextPage\"").doesNotContain("\"errors\"");
+
+        var persisted = post("{" + extensions + "}");
+        assertThat(persisted.statusCode()).isEqualTo(200);
+        assertThat(persisted.body()).isEqualTo(registered.body());
+    }
+
+    private HttpResponse<String> post(String body) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/graphql"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,76 @@
+package jon.modern_infra;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//Users registered per second, one by one vs. registerUsers. Needs Docker for the Postgres container
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class RegisterUserBenchmark {
+    private static final int USERS = 1_000;
+
+    private ConfigurableApplicationContext context;
+    private RegisterUser registerUser;
+    private List<RegisterUser.Command> commands;
+
+    @Setup(Level.Trial)
+    public void startApp() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = SpringApplication.from(AppRunner::main)
+                .with(TestcontainersConfiguration.class)
+                .run("--spring.main.web-application-type=none", "--logging.level.jon.modern_infra=WARN")
+                .getApplicationContext();
+        registerUser = context.getBean(RegisterUser.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void newUsers() {
+        commands = IntStream.range(0, USERS)
+                .mapToObj(i -> UUID.randomUUID())
+                .map(id -> new RegisterUser.Command(id, Optional.of("Real " + id), "user-" + id, id + "@mi.com", "secret", List.of("600000000")))
+                .toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApp() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(USERS)
+    public void oneByOne(Blackhole blackhole) {
+        for (var command : commands) {
+            blackhole.consume(registerUser.handle(command));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(USERS)
+    public List<RegisterUser.Result> batch() {
+        return registerUser.handleAll(commands);
+    }
+}
@@ -0,0 +1,55 @@
+package jon.modern_infra;
+
+import jakarta.validation.Validation;
+import jon.modern_infra.common.store.AuditPrincipal;
+import jon.modern_infra.common.store.AuditingCallback;
+import jon.modern_infra.common.store.InMemoryUserRepo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//RegisterUser.handle without the database, the Postgres path is in RegisterUserBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RegisterUserInMemoryBenchmark {
+    private final InMemoryUserRepo repository = new InMemoryUserRepo();
+    private RegisterUser registerUser;
+
+    @Setup
+    public void setUp() {
+        LoggingSystem.get(getClass().getClassLoader()).setLogLevel("jon.modern_infra", LogLevel.WARN);
+        //Events go nowhere, only the registration itself is measured
+        registerUser = new RegisterUser(repository, null, Validation.buildDefaultValidatorFactory().getValidator(), event -> {
+        }, new AuditingCallback(new AuditPrincipal("ModernInfra")));
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyRepository() {
+        repository.deleteAll();
+    }
+
+    @Benchmark
+    public UUID handle() {
+        var id = UUID.randomUUID();
+        return registerUser.handle(new RegisterUser.Command(id, Optional.of("Jon Snow"), "jon", "jon@mi.com", "secret", List.of("600000000")));
+    }
+}
@@ -0,0 +1,90 @@
+package jon.modern_infra;
+
+import jon.modern_infra.common.store.AuditingCallback;
+import jon.modern_infra.common.store.User;
+import jon.modern_infra.common.store.UserBatchRepo;
+import jon.modern_infra.common.store.UserRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//The custom SQL paths write what AuditingCallback stamped, and save() goes through the callback
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest
+class UserAuditingTests {
+    @Autowired private UserRepo userRepo;
+    @Autowired private UserBatchRepo userBatchRepo;
+    @Autowired private AuditingCallback auditing;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    private final String userId = UUID.randomUUID().toString();
+
+    @BeforeEach
+    void authenticate() {
+        var principal = org.springframework.security.core.userdetails.User.withUsername("jon").password("").authorities("UUID:" + userId).build();
+        SecurityContextHolder.getContext().setAuthentication(UsernamePasswordAuthenticationToken.authenticated(principal, null, principal.getAuthorities()));
+    }
+
+    @AfterEach
+    void clear() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void registerUserIfAbsentWritesTheCreatedColumns() {
+        var user = newUser();
+
+        assertThat(userRepo.registerUserIfAbsent(auditing.audit(user))).hasValue(user.id());
+
+        var row = row(user.id());
+        assertThat(row.get("created_by")).isEqualTo(userId);
+        assertThat(row.get("created_at")).isNotNull();
+    }
+
+    @Test
+    void insertAllWritesTheCreatedColumns() {
+        var users = List.of(newUser(), newUser());
+
+        assertThat(userBatchRepo.insertAll(auditing.auditAll(users))).containsExactly(true, true);
+
+        for (var user : users) {
+            var row = row(user.id());
+            assertThat(row.get("created_by")).isEqualTo(userId);
+            assertThat(row.get("created_at")).isNotNull();
+        }
+    }
+
+    @Test
+    void saveOfAnExistingUserWritesTheModifiedColumns() {
+        var user = newUser();
+        userRepo.registerUserIfAbsent(auditing.audit(user));
+
+        userRepo.save(userRepo.findById(user.id()).orElseThrow());
+
+        var row = row(user.id());
+        assertThat(row.get("created_by")).isEqualTo(userId);
+        assertThat(row.get("modified_by")).isEqualTo(userId);
+        assertThat(row.get("modified_at")).isNotNull();
+    }
+
+    private Map<String, Object> row(UUID id) {
+        return jdbcTemplate.queryForMap("SELECT created_by, created_at, modified_by, modified_at FROM mi.users WHERE user_id = ?", id);
+    }
+
+    private static User newUser() {
+        var id = UUID.randomUUID();
+        return User.Factory.register(id, User.RealName.of("Jon Snow"), User.UserName.of("user-" + id), User.Email.of(id + "@mi.com"), User.Password.of("secret"), User.PhoneNumbers.of(List.of("600000000")));
+    }
+}
@@ -0,0 +1,166 @@
+package jon.modern_infra;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import jon.modern_infra.security.SecurityConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Millions of rows through /users/export while the live heap, measured after a full GC every 500k lines,
+//must stay under a fixed cap. Materializing the users would need gigabytes
+@Slf4j
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {"spring.jpa.show-sql=false", "mi.users.export.fetch-size=1000"})
+class UserExportTests {
+    private static final int ROWS = 3_000_000;
+    private static final long HEAP_CAP = 64L * 1024 * 1024;
+    private static final int GC_EVERY = 500_000;
+    private static boolean seeded;
+
+    private static final KeyPair KEYS = keyPair();
+
+    @LocalServerPort private int port;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    //The export requires the EXPORT role, tokens are signed with a key generated for the run
+    @DynamicPropertySource
+    static void jwtPublicKey(DynamicPropertyRegistry registry) throws Exception {
+        var pem = Files.createTempFile("jwt", ".pem");
+        pem.toFile().deleteOnExit();
+        Files.writeString(pem, "-----BEGIN PUBLIC KEY-----\n" + Base64.getMimeEncoder().encodeToString(KEYS.getPublic().getEncoded()) + "\n-----END PUBLIC KEY-----\n");
+        registry.add("mi.security.jwt.public-key", () -> pem.toUri().toString());
+    }
+
+    @BeforeEach
+    void seed() {
+        if (!seeded) {
+            jdbcTemplate.update("""
+                    INSERT INTO mi.users (user_id, realname, username, email, password, phone_numbers, version, created_by, created_at, deleted)
+                    SELECT gen_random_uuid(), 'Real ' || i, 'user-' || i, 'user-' || i || '@mi.com', 'secret', ARRAY['600000000', '900000000'], 0, 'seed', now(), false
+                    FROM generate_series(1, ?) i
+                    """, ROWS);
+            seeded = true;
+        }
+    }
+
+    @Test
+    void streamsMillionsOfRowsWithinAFixedHeap() throws Exception {
+        var expected = jdbcTemplate.queryForObject("SELECT count(*) FROM mi.users", Long.class);
+        var memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        var baseline = memory.getHeapMemoryUsage().getUsed();
+        var maxLive = 0L;
+        var lines = 0L;
+
+        try (var reader = lines(export(false).body(), false)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (lines == 0) {
+                    assertThat(line).startsWith("{\"id\":").contains("\"phoneNumbers\":[").doesNotContain("password");
+                }
+                if (++lines % GC_EVERY == 0) {
+                    System.gc();
+                    maxLive = Math.max(maxLive, memory.getHeapMemoryUsage().getUsed() - baseline);
+                }
+            }
+        }
+
+        log.info("Exported {} users, live heap grew at most {} KB", lines, maxLive / 1024);
+        assertThat(lines).isEqualTo(expected);
+        assertThat(maxLive).isLessThan(HEAP_CAP);
+    }
+
+    @Test
+    void gzipWhenTheClientAcceptsIt() throws Exception {
+        var response = export(true);
+
+        assertThat(response.headers().firstValue("Content-Encoding")).hasValue("gzip");
+        try (var reader = lines(response.body(), true)) {
+            assertThat(reader.lines().count()).isEqualTo(jdbcTemplate.queryForObject("SELECT count(*) FROM mi.users", Long.class));
+        }
+    }
+
+    @Test
+    void anonymousRequestsAreRejected() throws Exception {
+        var response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/users/export")).build(),
+                HttpResponse.BodyHandlers.discarding());
+
+        assertThat(response.statusCode()).isEqualTo(401);
+    }
+
+    @Test
+    void usersWithoutTheExportRoleAreForbidden() throws Exception {
+        var response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/users/export"))
+                        .header("Authorization", "Bearer " + token(List.of("USER"))).build(),
+                HttpResponse.BodyHandlers.discarding());
+
+        assertThat(response.statusCode()).isEqualTo(403);
+    }
+
+    private HttpResponse<InputStream> export(boolean gzip) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/users/export"))
+                .header("Authorization", "Bearer " + token(List.of(SecurityConfig.EXPORT_ROLE)));
+        if (gzip) {
+            request.header("Accept-Encoding", "gzip");
+        }
+        var response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.headers().firstValue("Content-Type")).hasValueSatisfying(type -> assertThat(type).startsWith(UserExportExample.NDJSON));
+        return response;
+    }
+
+    private static String token(List<String> roles) {
+        return JWT.create()
+                .withSubject(UUID.randomUUID().toString())
+                .withClaim("roles", roles)
+                .withExpiresAt(Instant.now().plus(Duration.ofMinutes(10)))
+                .sign(Algorithm.RSA256(null, (RSAPrivateKey) KEYS.getPrivate()));
+    }
+
+    private static KeyPair keyPair() {
+        try {
+            var generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static BufferedReader lines(InputStream body, boolean gzip) throws Exception {
+        return new BufferedReader(new InputStreamReader(gzip ? new GZIPInputStream(body) : body, UTF_8));
+    }
+}
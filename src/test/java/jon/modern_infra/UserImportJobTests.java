@@ -0,0 +1,93 @@
+package jon.modern_infra;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//1M rows through the partitioned import, the log line has the rows per second
+@Slf4j
+@Import(TestcontainersConfiguration.class)
+@SpringBootTest(properties = {"logging.level.jon.modern_infra=INFO", "mi.users.import.workers=4"})
+@SpringBatchTest
+class UserImportJobTests {
+    private static final int ROWS = 1_000_000;
+    private static final int INVALID = 10;
+
+    @TempDir static Path dir;
+
+    @Autowired private JobLauncherTestUtils jobLauncherTestUtils;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void importsAMillionRowCsv() throws Exception {
+        var file = csv(ROWS, INVALID);
+        var before = jdbcTemplate.queryForObject("SELECT count(*) FROM mi.users", Long.class);
+
+        var execution = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                .addString(UserImportJobConfig.FILE, file.toString())
+                .toJobParameters());
+        var status = BatchExample.ImportStatus.of(execution);
+
+        log.info("Imported {} rows at {} rows/s", status.written(), status.rowsPerSecond());
+        assertThat(execution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(status.written()).isEqualTo(ROWS);
+        assertThat(status.invalid()).isEqualTo(INVALID);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM mi.users", Long.class) - before).isEqualTo(ROWS);
+    }
+
+    @Test
+    void sameRowsImportedAgainAreReadButNotCountedAsWritten() throws Exception {
+        var rows = new StringBuilder("id,realname,username,email,password,phoneNumbers\n");
+        for (int i = 0; i < 100; i++) {
+            var id = UUID.randomUUID();
+            rows.append(id).append(",Real ").append(i).append(",user-").append(id).append(',').append(id).append("@mi.com,secret,600000000\n");
+        }
+        var first = Files.writeString(dir.resolve("first.csv"), rows);
+        var again = Files.writeString(dir.resolve("again.csv"), rows);
+
+        assertThat(BatchExample.ImportStatus.of(launch(first)).written()).isEqualTo(100);
+        var status = BatchExample.ImportStatus.of(launch(again));
+
+        assertThat(status.status()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(status.read()).isEqualTo(100);
+        assertThat(status.written()).isZero();
+    }
+
+    private JobExecution launch(Path file) throws Exception {
+        return jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                .addString(UserImportJobConfig.FILE, file.toString())
+                .toJobParameters());
+    }
+
+    //Invalid rows have no email, spread over the file so every partition sees some
+    private static Path csv(int rows, int invalid) throws IOException {
+        var file = dir.resolve("users.csv");
+        var every = (rows + invalid) / invalid;
+
+        try (var writer = Files.newBufferedWriter(file)) {
+            writer.write("id,realname,username,email,password,phoneNumbers\n");
+            for (int i = 0; i < rows + invalid; i++) {
+                var id = UUID.randomUUID();
+                var email = i % every == every - 1 ? "" : id + "@mi.com";
+                writer.write(id + ",Real " + i + ",user-" + id + "," + email + ",secret,600000000|600000001\n");
+            }
+        }
+        return file;
+    }
+}
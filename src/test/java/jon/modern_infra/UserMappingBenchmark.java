@@ -0,0 +1,77 @@
+package jon.modern_infra;
+
+import jon.modern_infra.common.store.User;
+import jon.modern_infra.common.store.UserBatchRepo;
+import jon.modern_infra.common.store.UserRepo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//Rows per second reading 100k users through UserRepo, Spring Data JDBC mapping vs. UserRowMapper.
+//Both pay the same query and transfer, the difference is the mapping. Needs Docker for the Postgres container
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+public class UserMappingBenchmark {
+    private static final int ROWS = 100_000;
+
+    @Param({"false", "true"})
+    private boolean precompiled;
+
+    private ConfigurableApplicationContext context;
+    private UserRepo userRepo;
+
+    @Setup(Level.Trial)
+    public void startApp() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = SpringApplication.from(AppRunner::main)
+                .with(TestcontainersConfiguration.class)
+                .run("--spring.main.web-application-type=none", "--logging.level.jon.modern_infra=WARN",
+                        "--spring.jpa.show-sql=false", "--mi.users.precompiled-mapping.enabled=" + precompiled)
+                .getApplicationContext();
+        userRepo = context.getBean(UserRepo.class);
+
+        var batchRepo = context.getBean(UserBatchRepo.class);
+        var now = LocalDateTime.now();
+        for (int from = 0; from < ROWS; from += 5_000) {
+            batchRepo.insertAll(IntStream.range(from, from + 5_000)
+                    .mapToObj(i -> UUID.randomUUID())
+                    .map(id -> User.Factory.register(id, User.RealName.of("Real " + id), User.UserName.of("user-" + id), User.Email.of(id + "@mi.com"), User.Password.of("secret"), User.PhoneNumbers.of(List.of("600000000", "900000000")))
+                            .withCreated("seed", now))
+                    .toList());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApp() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<User> findFirstPage() {
+        return userRepo.findFirstPage(ROWS);
+    }
+}
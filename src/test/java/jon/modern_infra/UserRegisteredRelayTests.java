@@ -0,0 +1,83 @@
+package jon.modern_infra;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Outbox to Kafka end to end: registrations in batches, then how long until every UserRegistered is readable from the topic
+@Slf4j
+@SpringBootTest(properties = "logging.level.jon.modern_infra=WARN")
+@EmbeddedKafka(topics = UserRegistered.TOPIC, partitions = 3, bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+class UserRegisteredRelayTests {
+    private static final int USERS = 20_000;
+    private static final int BATCH = 500;
+
+    //Only Postgres, Kafka is the embedded broker
+    @TestConfiguration(proxyBeanMethods = false)
+    static class PostgresOnly {
+        @Bean
+        @ServiceConnection
+        PostgreSQLContainer<?> postgresContainer() {
+            return new PostgreSQLContainer<>(DockerImageName.parse("postgres:latest"));
+        }
+    }
+
+    @Autowired private RegisterUser registerUser;
+    @Autowired private EmbeddedKafkaBroker broker;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void everyRegisteredUserIsRelayedToKafka() {
+        var ids = IntStream.range(0, USERS).mapToObj(i -> UUID.randomUUID()).toList();
+        var pending = new HashSet<>(ids.stream().map(UUID::toString).toList());
+
+        var consumerProps = KafkaTestUtils.consumerProps("relay-test", "false", broker);
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        try (var consumer = new KafkaConsumer<>(consumerProps, new StringDeserializer(), new StringDeserializer())) {
+            consumer.subscribe(List.of(UserRegistered.TOPIC));
+
+            var start = System.nanoTime();
+            for (int from = 0; from < USERS; from += BATCH) {
+                registerUser.handleAll(ids.subList(from, from + BATCH).stream()
+                        .map(id -> new RegisterUser.Command(id, Optional.empty(), "user-" + id, id + "@mi.com", "secret", List.of()))
+                        .toList());
+            }
+            var registered = System.nanoTime() - start;
+
+            var deadline = System.nanoTime() + Duration.ofMinutes(2).toNanos();
+            while (!pending.isEmpty() && System.nanoTime() < deadline) {
+                consumer.poll(Duration.ofMillis(200)).forEach(record -> pending.remove(record.key()));
+            }
+            var relayed = System.nanoTime() - start;
+
+            log.warn("{} users registered in {} ms, relayed to Kafka in {} ms, {} events/s",
+                    USERS, registered / 1_000_000, relayed / 1_000_000, USERS * 1_000_000_000L / relayed);
+        }
+
+        assertThat(pending).isEmpty();
+        //Completed publications are deleted, nothing left in the outbox
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM event_publication", Integer.class)).isZero();
+    }
+}
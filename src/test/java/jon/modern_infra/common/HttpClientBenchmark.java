@@ -0,0 +1,76 @@
+package jon.modern_infra.common;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+//Calls per second to a local stub, previous bare RestTemplate vs the pooled factory. Run with -bm sample for latency percentiles
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(32)
+public class HttpClientBenchmark {
+    @Param({"simple", "pooled"})
+    private String client;
+
+    private HttpServer stub;
+    private RestTemplate restTemplate;
+    private String url;
+
+    @Setup
+    public void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("localhost", 0), 1_024);
+        stub.createContext("/pay", exchange -> {
+            var body = "Pago procesado correctamente".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stub.start();
+        url = "http://localhost:" + stub.getAddress().getPort() + "/pay";
+
+        var properties = new HttpClientProperties(200, 64, Map.of(), Duration.ofSeconds(2), Duration.ofSeconds(5),
+                Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofMinutes(5), false);
+        restTemplate = switch (client) {
+            case "simple" -> new RestTemplate(new SimpleClientHttpRequestFactory());
+            case "pooled" -> new RestTemplate(new Config().httpRequestFactory(properties, new SimpleMeterRegistry()));
+            default -> throw new IllegalArgumentException(client);
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        stub.stop(0);
+    }
+
+    @Benchmark
+    public String call() {
+        return restTemplate.getForObject(url, String.class);
+    }
+}
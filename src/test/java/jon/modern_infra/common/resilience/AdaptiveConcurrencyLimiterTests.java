@@ -0,0 +1,109 @@
+package jon.modern_infra.common.resilience;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTests {
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final AtomicInteger stubInFlight = new AtomicInteger();
+    private final AtomicInteger stubMaxInFlight = new AtomicInteger();
+    private volatile long stubLatencyMillis;
+    private HttpServer stub;
+    private String url;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.createContext("/pay", exchange -> {
+            stubMaxInFlight.accumulateAndGet(stubInFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(stubLatencyMillis);
+                var body = "ok".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                stubInFlight.decrementAndGet();
+                exchange.close();
+            }
+        });
+        stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stub.start();
+        url = "http://localhost:" + stub.getAddress().getPort() + "/pay";
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.stop(0);
+    }
+
+    @Test
+    void capsConcurrencyAndShrinksTheLimitWhenTheDownstreamSlowsDown() throws Exception {
+        var limiter = new AdaptiveConcurrencyLimiter("test", 20, 1, 200, 2.0, 0.9);
+
+        stubLatencyMillis = 5;
+        callConcurrently(limiter, 20, 400);
+        var healthyLimit = limiter.limit();
+
+        stubLatencyMillis = 200;
+        stubMaxInFlight.set(0);
+        callConcurrently(limiter, 500, 500);
+
+        assertThat(stubMaxInFlight.get()).isLessThanOrEqualTo(healthyLimit);
+        assertThat(limiter.rejected()).isPositive();
+        assertThat(limiter.limit()).isLessThan(healthyLimit);
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void fastFailuresCutTheLimitButDontLowerTheRttBaseline() throws Exception {
+        var limiter = new AdaptiveConcurrencyLimiter("test", 20, 1, 200, 2.0, 0.9);
+        stubLatencyMillis = 20;
+        callConcurrently(limiter, 20, 100);
+
+        for (int i = 0; i < 50; i++) {
+            assertThatThrownBy(() -> limiter.call(() -> {
+                throw new ResourceAccessException("Connection refused");
+            })).isInstanceOf(ResourceAccessException.class);
+        }
+        var afterFailures = limiter.limit();
+        assertThat(afterFailures).isLessThan(20);
+
+        //Still as fast as before the failures, the limit grows back instead of collapsing to the minimum
+        callConcurrently(limiter, afterFailures, 200);
+        assertThat(limiter.limit()).isGreaterThan(afterFailures);
+    }
+
+    private void callConcurrently(AdaptiveConcurrencyLimiter limiter, int concurrency, int calls) throws InterruptedException {
+        var permits = new Semaphore(concurrency);
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < calls; i++) {
+                permits.acquire();
+                executor.submit(() -> {
+                    try {
+                        return limiter.call(() -> restTemplate.getForObject(url, String.class));
+                    } catch (LimitExceededException ex) {
+                        return null;
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+    }
+}
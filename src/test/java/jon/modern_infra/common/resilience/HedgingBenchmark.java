@@ -0,0 +1,81 @@
+package jon.modern_infra.common.resilience;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Latency percentiles (look at p0.99) of a stub where slowRatio of the calls take slowMillis instead of fastMillis
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(16)
+public class HedgingBenchmark {
+    @Param({"5"})
+    private long fastMillis;
+    @Param({"200"})
+    private long slowMillis;
+    @Param({"0.05"})
+    private double slowRatio;
+    @Param({"false", "true"})
+    private boolean hedging;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+    private HttpServer stub;
+    private HedgedExecutor hedger;
+    private String url;
+
+    @Setup
+    public void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("localhost", 0), 1_024);
+        stub.createContext("/pay", exchange -> {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextDouble() < slowRatio ? slowMillis : fastMillis);
+                var body = "ok".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stub.start();
+        url = "http://localhost:" + stub.getAddress().getPort() + "/pay";
+
+        hedger = new HedgedExecutor("bench", hedging, 0.95, Duration.ofMillis(1), new RetryBudget(0.1, 20));
+    }
+
+    @TearDown
+    public void tearDown() {
+        stub.stop(0);
+    }
+
+    @Benchmark
+    public String paymentStatus() throws Exception {
+        return hedger.call(() -> restTemplate.getForObject(url, String.class));
+    }
+}
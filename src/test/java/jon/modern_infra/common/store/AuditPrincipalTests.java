@@ -0,0 +1,80 @@
+package jon.modern_infra.common.store;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditPrincipalTests {
+    private final AuditPrincipal auditPrincipal = new AuditPrincipal("ModernInfra");
+
+    @AfterEach
+    void clear() {
+        SecurityContextHolder.clearContext();
+        RequestContextHolder.resetRequestAttributes();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void withoutAuthenticationItIsTheApplication() {
+        assertThat(auditPrincipal.current()).isEqualTo("ModernInfra");
+    }
+
+    @Test
+    void resolvedOncePerRequest() {
+        var request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        var userId = authenticate();
+
+        assertThat(auditPrincipal.current()).isEqualTo(userId);
+        //Cached in the request, a change of authentication afterwards is not seen
+        authenticate();
+        assertThat(auditPrincipal.current()).isEqualTo(userId);
+        assertThat(request.getAttribute(AuditPrincipal.class.getName())).isEqualTo(userId);
+    }
+
+    @Test
+    void resolvedOncePerTransactionAndUnboundAfterCompletion() {
+        TransactionSynchronizationManager.initSynchronization();
+        var userId = authenticate();
+
+        assertThat(auditPrincipal.current()).isEqualTo(userId);
+        authenticate();
+        assertThat(auditPrincipal.current()).isEqualTo(userId);
+
+        complete();
+
+        //The next transaction on this pooled thread resolves again
+        assertThat(TransactionSynchronizationManager.hasResource(AuditPrincipal.class.getName())).isFalse();
+        TransactionSynchronizationManager.initSynchronization();
+        var nextUserId = authenticate();
+        assertThat(auditPrincipal.current()).isEqualTo(nextUserId);
+        complete();
+    }
+
+    private static String authenticate() {
+        var userId = UUID.randomUUID().toString();
+        var principal = User.withUsername("jon").password("").authorities("UUID:" + userId).build();
+        SecurityContextHolder.getContext().setAuthentication(UsernamePasswordAuthenticationToken.authenticated(principal, null, principal.getAuthorities()));
+        return userId;
+    }
+
+    //What the transaction manager does on commit
+    private static void complete() {
+        var synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+    }
+}
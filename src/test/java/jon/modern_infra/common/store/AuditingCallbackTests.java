@@ -0,0 +1,55 @@
+package jon.modern_infra.common.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditingCallbackTests {
+    private final AtomicInteger resolved = new AtomicInteger();
+    private final AuditingCallback auditing = new AuditingCallback(new AuditPrincipal("ModernInfra") {
+        @Override
+        public String current() {
+            return "principal-" + resolved.incrementAndGet();
+        }
+    });
+
+    @Test
+    void newUsersGetCreatedColumns() {
+        var audited = (User) auditing.onBeforeConvert(user());
+
+        assertThat(audited.createdBy()).isEqualTo("principal-1");
+        assertThat(audited.createdAt()).isNotNull();
+        assertThat(audited.modifiedBy()).isNull();
+        assertThat(audited.modifiedAt()).isNull();
+    }
+
+    @Test
+    void existingUsersGetModifiedColumnsAndKeepTheCreatedOnes() {
+        var createdAt = LocalDateTime.of(2024, 1, 1, 0, 0);
+        var audited = (User) auditing.onBeforeConvert(user().withCreated("creator", createdAt));
+
+        assertThat(audited.createdBy()).isEqualTo("creator");
+        assertThat(audited.createdAt()).isEqualTo(createdAt);
+        assertThat(audited.modifiedBy()).isEqualTo("principal-1");
+        assertThat(audited.modifiedAt()).isNotNull();
+    }
+
+    @Test
+    void auditAllResolvesThePrincipalOnceForTheWholeList() {
+        var audited = auditing.auditAll(List.of(user(), user(), user()));
+
+        assertThat(resolved).hasValue(1);
+        assertThat(audited).extracting(User::createdBy).containsOnly("principal-1");
+        assertThat(audited).extracting(User::createdAt).containsOnly(audited.getFirst().createdAt());
+    }
+
+    private static User user() {
+        var id = UUID.randomUUID();
+        return User.Factory.register(id, User.RealName.of("Jon Snow"), User.UserName.of("user-" + id), User.Email.of(id + "@mi.com"), User.Password.of("secret"), User.PhoneNumbers.of(List.of("600000000")));
+    }
+}
@@ -0,0 +1,96 @@
+package jon.modern_infra.common.store;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.StreamSupport;
+
+//Map-backed UserRepo for benchmarks that must not measure the network or Postgres
+public class InMemoryUserRepo implements UserRepo {
+    private final ConcurrentSkipListMap<UUID, User> users = new ConcurrentSkipListMap<>();
+
+    @Override
+    public Optional<UUID> insertIfAbsent(UUID id, String realname, String username, String email, String password, String[] phoneNumbers,
+                                         String roleCode, Integer version, String createdBy, LocalDateTime createdAt, Boolean deleted) {
+        var user = new User(id, User.RealName.of(realname), User.UserName.of(username), User.Email.of(email), User.Password.of(password),
+                User.PhoneNumbers.of(phoneNumbers == null ? null : Arrays.asList(phoneNumbers)), roleCode, version, createdBy, createdAt, null, null, deleted);
+        return users.putIfAbsent(id, user) == null ? Optional.of(id) : Optional.empty();
+    }
+
+    @Override
+    public List<User> findFirstPage(int limit) {
+        return users.values().stream().limit(limit).toList();
+    }
+
+    @Override
+    public List<User> findPageAfter(UUID after, int limit) {
+        return users.tailMap(after, false).values().stream().limit(limit).toList();
+    }
+
+    @Override
+    public <S extends User> S save(S entity) {
+        users.put(entity.id(), entity);
+        return entity;
+    }
+
+    @Override
+    public <S extends User> Iterable<S> saveAll(Iterable<S> entities) {
+        entities.forEach(this::save);
+        return entities;
+    }
+
+    @Override
+    public Optional<User> findById(UUID id) {
+        return Optional.ofNullable(users.get(id));
+    }
+
+    @Override
+    public boolean existsById(UUID id) {
+        return users.containsKey(id);
+    }
+
+    @Override
+    public Iterable<User> findAll() {
+        return new ArrayList<>(users.values());
+    }
+
+    @Override
+    public Iterable<User> findAllById(Iterable<UUID> ids) {
+        return StreamSupport.stream(ids.spliterator(), false).map(users::get).filter(Objects::nonNull).toList();
+    }
+
+    @Override
+    public long count() {
+        return users.size();
+    }
+
+    @Override
+    public void deleteById(UUID id) {
+        users.remove(id);
+    }
+
+    @Override
+    public void delete(User entity) {
+        users.remove(entity.id());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends UUID> ids) {
+        ids.forEach(users::remove);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends User> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        users.clear();
+    }
+}
@@ -0,0 +1,52 @@
+package jon.modern_infra.common.store;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JdbcGovernorTests {
+    private final JdbcGovernor governor = new JdbcGovernor(true, 1, Duration.ofMillis(50));
+
+    @Test
+    void virtualThreadsWaitForThePermitOfAClosedConnection() throws Exception {
+        var dataSource = governed();
+
+        var first = onVirtualThread(dataSource::getConnection);
+        assertThatThrownBy(() -> onVirtualThread(dataSource::getConnection)).hasCauseInstanceOf(SQLTransientConnectionException.class);
+
+        first.close();
+        first.close();
+        assertThat(onVirtualThread(dataSource::getConnection)).isNotNull();
+        assertThatThrownBy(() -> onVirtualThread(dataSource::getConnection)).hasCauseInstanceOf(SQLTransientConnectionException.class);
+    }
+
+    @Test
+    void platformThreadsAreNotGoverned() throws Exception {
+        var dataSource = governed();
+
+        onVirtualThread(dataSource::getConnection);
+        assertThat(dataSource.getConnection()).isNotNull();
+    }
+
+    private DataSource governed() throws Exception {
+        var target = mock(DataSource.class);
+        when(target.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        return (DataSource) governor.postProcessAfterInitialization(target, "dataSource");
+    }
+
+    private static <T> T onVirtualThread(Callable<T> task) throws Exception {
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            return executor.submit(task).get();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package jon.modern_infra.common.store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+//Principal resolution through the @PrePersist entry point, for every Authentication shape it handles,
+//against auditAll that resolves it once for a thousand rows
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UserAuditListenerBenchmark {
+    private static final int ROWS = 1_000;
+
+    @Param({"none", "anonymous", "uuidUsername", "uuidAuthority", "plainPrincipal"})
+    private String shape;
+
+    private final AuditPrincipal auditPrincipal = new AuditPrincipal("ModernInfra");
+    private final UserAuditListener listener = new UserAuditListener(auditPrincipal);
+    private final AuditingCallback auditing = new AuditingCallback(auditPrincipal);
+    private final Audited audited = new Audited();
+    private final List<User> users = IntStream.range(0, ROWS)
+            .mapToObj(i -> User.Factory.register(UUID.randomUUID(), User.RealName.of("Jon"), User.UserName.of("jon" + i), User.Email.of("jon" + i + "@mi.com"), User.Password.of("secret"), User.PhoneNumbers.of(List.of())))
+            .toList();
+
+    @Setup
+    public void setUp() {
+        SecurityContextHolder.getContext().setAuthentication(authentication(shape));
+    }
+
+    @Benchmark
+    public String setCreatedBy() {
+        audited.setCreatedBy(null);
+        listener.setCreatedBy(audited);
+        return audited.getCreatedBy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<User> auditAll() {
+        return auditing.auditAll(users);
+    }
+
+    private static Authentication authentication(String shape) {
+        var uuid = UUID.randomUUID().toString();
+        var roles = AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN", "ROLE_AUDITOR", "ROLE_OPS", "ROLE_SUPPORT");
+
+        return switch (shape) {
+            case "none" -> null;
+            case "anonymous" -> new AnonymousAuthenticationToken("key", "anonymousUser", AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+            case "uuidUsername" -> authenticated(uuid, roles);
+            case "uuidAuthority" -> {
+                //Worst case, the UUID authority is the last one
+                List<GrantedAuthority> authorities = new ArrayList<>(roles);
+                authorities.addAll(AuthorityUtils.createAuthorityList("UUID:" + uuid));
+                yield authenticated("jon", authorities);
+            }
+            case "plainPrincipal" -> UsernamePasswordAuthenticationToken.authenticated("jon", null, roles);
+            default -> throw new IllegalArgumentException(shape);
+        };
+    }
+
+    private static Authentication authenticated(String username, List<GrantedAuthority> authorities) {
+        var principal = org.springframework.security.core.userdetails.User.withUsername(username).password("secret").authorities(authorities).build();
+        return UsernamePasswordAuthenticationToken.authenticated(principal, null, authorities);
+    }
+
+    static class Audited extends AuditingColumns {
+    }
+}
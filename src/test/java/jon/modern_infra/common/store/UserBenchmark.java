@@ -0,0 +1,79 @@
+package jon.modern_infra.common.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import graphql.GraphQL;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.graphql.data.pagination.ConnectionTypeDefinitionConfigurer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//Creation and serialization of the User aggregate, with its five @Embedded.Empty value records
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UserBenchmark {
+    private static final String USER_BY_ID = "query { userById(id: \"f5e4e2a8-7f07-4b2e-9b7c-6c6b1fcd3c42\") { id realname username email phoneNumbers } }";
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private User user;
+    private GraphQL graphQL;
+
+    @Setup
+    public void setUp() throws IOException {
+        user = register();
+
+        //Same schema the app serves, resolved with the default property data fetchers like the controllers do
+        var registry = new SchemaParser().parse(new ClassPathResource("graphql/schema.graphqls").getInputStream());
+        new ConnectionTypeDefinitionConfigurer().configure(registry);
+        var wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", builder -> builder.dataFetcher("userById", env -> user))
+                .build();
+        graphQL = GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(registry, wiring)).build();
+    }
+
+    @Benchmark
+    public User factoryRegister() {
+        return register();
+    }
+
+    @Benchmark
+    public byte[] jsonSerialization() throws Exception {
+        return objectMapper.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] graphQLSerialization() throws Exception {
+        var result = graphQL.execute(USER_BY_ID);
+        return objectMapper.writeValueAsBytes(result.toSpecification());
+    }
+
+    private static User register() {
+        return User.Factory.register(
+                UUID.randomUUID(),
+                User.RealName.of("Jon Snow"),
+                User.UserName.of("jon"),
+                User.Email.of("jon@mi.com"),
+                User.Password.of("secret"),
+                User.PhoneNumbers.of(List.of("600000000", "900000000"))
+        );
+    }
+}
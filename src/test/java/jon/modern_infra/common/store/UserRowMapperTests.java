@@ -0,0 +1,47 @@
+package jon.modern_infra.common.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserRowMapperTests {
+
+    @Test
+    void mapsEveryColumnAndTheParameterSourceWritesThemBack() throws Exception {
+        var id = UUID.randomUUID();
+        var createdAt = LocalDateTime.of(2026, 1, 1, 10, 0);
+        var phoneNumbers = mock(Array.class);
+        when(phoneNumbers.getArray()).thenReturn(new String[]{"600000000", "900000000"});
+
+        var rs = mock(ResultSet.class);
+        when(rs.getObject("user_id", UUID.class)).thenReturn(id);
+        when(rs.getString("username")).thenReturn("jon");
+        when(rs.getString("email")).thenReturn("jon@mi.com");
+        when(rs.getString("password")).thenReturn("secret");
+        when(rs.getArray("phone_numbers")).thenReturn(phoneNumbers);
+        when(rs.getInt("version")).thenReturn(3);
+        when(rs.getString("created_by")).thenReturn("seed");
+        when(rs.getTimestamp("created_at")).thenReturn(Timestamp.valueOf(createdAt));
+
+        var user = UserRowMapper.INSTANCE.mapRow(rs, 0);
+
+        assertThat(user).isEqualTo(new User(id, User.RealName.of(null), User.UserName.of("jon"), User.Email.of("jon@mi.com"), User.Password.of("secret"),
+                User.PhoneNumbers.of(List.of("600000000", "900000000")), null, 3, "seed", createdAt, null, null, false));
+
+        var params = new UserParameterSource(user);
+        assertThat(params.getValue("id")).isEqualTo(id);
+        assertThat(params.getValue("realname")).isNull();
+        assertThat(params.getValue("phoneNumbers")).isEqualTo(new String[]{"600000000", "900000000"});
+        assertThat(params.getValue("createdAt")).isEqualTo(Timestamp.valueOf(createdAt));
+        assertThat(params.hasValue("unknown")).isFalse();
+    }
+}
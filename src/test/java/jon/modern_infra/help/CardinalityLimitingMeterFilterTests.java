@@ -0,0 +1,34 @@
+package jon.modern_infra.help;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CardinalityLimitingMeterFilterTests {
+
+    @Test
+    void foldsValuesOverTheCapIntoOther() {
+        var registry = new SimpleMeterRegistry();
+        var filter = new CardinalityLimitingMeterFilter(2);
+        registry.config().meterFilter(filter);
+        filter.bindTo(registry);
+
+        for (var prefix : new String[]{"ES", "FR", "DE", "IT", "ES"}) {
+            registry.counter("get-balance", "accountPrefix", prefix).increment();
+        }
+
+        assertThat(registry.get("get-balance").tag("accountPrefix", "ES").counter().count()).isEqualTo(2);
+        assertThat(registry.get("get-balance").tag("accountPrefix", "OTHER").counter().count()).isEqualTo(2);
+        assertThat(registry.get("metrics.tag.values.rejected").functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void prefixReturnsTheSameInstanceAndOtherWhenFull() {
+        var prefixes = new BoundedTagValues(2);
+
+        assertThat(prefixes.prefix("ES-0001", '-')).isEqualTo("ES").isSameAs(prefixes.prefix("ES-0002", '-'));
+        assertThat(prefixes.prefix("FR", '-')).isEqualTo("FR");
+        assertThat(prefixes.prefix("DE-0001", '-')).isEqualTo(BoundedTagValues.OTHER);
+    }
+}
@@ -0,0 +1,53 @@
+package jon.modern_infra.help;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+//Logging cost paid by the request thread for the BEGIN/END pair every endpoint logs. Run with -prof gc for allocations.
+//before is not the old pipeline byte for byte: it keeps the old messages (the whole Request through toString) and the
+//synchronous write, but to a file with the compact JsonTemplateLayout. The old config wrote to the console with a
+//pretty-printed LogstashLayout, which is slower still, so the difference measured here is a lower bound
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+public class LoggingBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(LoggingBenchmark.class);
+
+    private final Request request = new Request("1234567890", new BigDecimal("1000.50"), "USD", "ACTIVE", "SAVINGS", LocalDateTime.now());
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {
+            "-Dlog4j2.configurationFile=log4j2-bench-sync.properties",
+            "-Dlog4j2.contextSelector=org.apache.logging.log4j.core.selector.ClassLoaderContextSelector"})
+    public void before() {
+        log.info("BEGIN Updating account with number {} with this JSON: {}", request.accountNumber(), request);
+        log.info("END Account with number {} updated", request.accountNumber());
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-bench-async.properties")
+    public void after() {
+        log.info("BEGIN Updating account with number {}", request.accountNumber());
+        log.info("END Account with number {} updated", request.accountNumber());
+    }
+
+    record Request(String accountNumber, BigDecimal balance, String currency, String status, String accountType, LocalDateTime dateOfCreation) {
+    }
+}
@@ -0,0 +1,55 @@
+package jon.modern_infra.help;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ObservationProfilerTests {
+    private final ObservationProfiler profiler = new ObservationProfiler(true, Duration.ofMillis(10), "150/s", Duration.ofMinutes(1), DataSize.ofMegabytes(10));
+    private final ObservationRegistry registry = ObservationRegistry.create();
+
+    @BeforeEach
+    void setUp() {
+        profiler.start();
+        registry.observationConfig().observationHandler(profiler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        profiler.stop();
+        MDC.clear();
+    }
+
+    @Test
+    void samplesAreAttributedToTheTraceOfTheirScope() {
+        MDC.put(TraceIdGenerator.TRACE_ID, "0123456789abcdef");
+        Observation.createNotStarted("busy", registry).observe(ObservationProfilerTests::spin);
+        MDC.put(TraceIdGenerator.TRACE_ID, "fedcba9876543210");
+        Observation.createNotStarted("other", registry).observe(() -> {
+        });
+
+        var profile = profiler.profile("0123456789abcdef", null);
+
+        assertThat(profile.scopes()).isEqualTo(1);
+        assertThat(profile.executionSamples()).isPositive();
+        assertThat(profile.cpu()).anyMatch(stack -> stack.contains("ObservationProfilerTests.spin"));
+        assertThat(profiler.profile(null, "other").executionSamples()).isZero();
+    }
+
+    private static void spin() {
+        var end = System.nanoTime() + Duration.ofMillis(500).toNanos();
+        var sum = 0L;
+        while (System.nanoTime() < end) {
+            sum += Long.numberOfTrailingZeros(sum + System.nanoTime());
+        }
+        assertThat(sum).isNotNegative();
+    }
+}
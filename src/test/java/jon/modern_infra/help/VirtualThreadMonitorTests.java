@@ -0,0 +1,65 @@
+package jon.modern_infra.help;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VirtualThreadMonitorTests {
+    private static final Object LOCK = new Object();
+
+    private final VirtualThreadMonitor monitor = new VirtualThreadMonitor(true, Duration.ofMillis(10));
+    private final VirtualThreadsEndpoint endpoint = new VirtualThreadsEndpoint(monitor);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        monitor.bindTo(registry);
+        monitor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        monitor.stop();
+    }
+
+    @Test
+    void pinningOverTheThresholdIsAggregatedByApplicationFrame() throws Exception {
+        Thread.ofVirtual().start(VirtualThreadMonitorTests::sleepHoldingAMonitor).join();
+
+        //The stream delivers events about once a second
+        var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (pinned().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+
+        var frame = pinned().orElseThrow();
+        assertThat(frame.frame()).startsWith(VirtualThreadMonitorTests.class.getName() + ".sleepHoldingAMonitor:");
+        assertThat(frame.count()).isEqualTo(1);
+        assertThat(frame.maxMillis()).isGreaterThanOrEqualTo(50);
+        assertThat(registry.get("jvm.threads.virtual.pinned").tag("frame", frame.frame()).timer().count()).isEqualTo(1);
+
+        endpoint.reset();
+        assertThat(endpoint.frames()).isEmpty();
+    }
+
+    private Optional<VirtualThreadMonitor.FrameStats.Snapshot> pinned() {
+        return endpoint.frames().stream().filter(frame -> VirtualThreadMonitor.PINNED.equals(frame.event())).findFirst();
+    }
+
+    //Parking inside synchronized pins the carrier on JDK 21
+    private static void sleepHoldingAMonitor() {
+        synchronized (LOCK) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
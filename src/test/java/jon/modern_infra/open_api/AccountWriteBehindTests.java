@@ -0,0 +1,123 @@
+package jon.modern_infra.open_api;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AccountWriteBehindTests {
+    private final List<List<OpenAPIExample.Request>> batches = new ArrayList<>();
+    private final List<OpenAPIExample.Request> deadLetters = new ArrayList<>();
+    private final AccountRepo accountRepo = new AccountRepo(null) {
+        @Override
+        void upsertAll(Collection<OpenAPIExample.Request> requests) {
+            batches.add(List.copyOf(requests));
+        }
+    };
+
+    private static OpenAPIExample.Request update(String accountNumber, String balance) {
+        return new OpenAPIExample.Request(accountNumber, new BigDecimal(balance), "EUR", "ACTIVE", "SAVINGS", null);
+    }
+
+    @Test
+    void coalescesPerAccountAndRejectsWhenFull() throws Exception {
+        var registry = new SimpleMeterRegistry();
+        //Batch size over the buffer so only the explicit flush writes
+        var writeBehind = new AccountWriteBehind(accountRepo, registry, true, 10, 2, Duration.ofHours(1), Duration.ofHours(1));
+
+        assertThat(writeBehind.offer(update("1", "10"))).isTrue();
+        assertThat(writeBehind.offer(update("1", "20"))).isTrue();
+        assertThat(writeBehind.offer(update("2", "5"))).isTrue();
+        assertThat(writeBehind.offer(update("3", "7"))).isFalse();
+        //Already pending, it replaces instead of taking a new slot
+        assertThat(writeBehind.offer(update("2", "6"))).isTrue();
+
+        writeBehind.destroy();
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.getFirst()).extracting(OpenAPIExample.Request::balance)
+                .containsExactlyInAnyOrder(new BigDecimal("20"), new BigDecimal("6"));
+        assertThat(writeBehind.pending()).isZero();
+        assertThat(registry.get("account.updates.rejected").counter().count()).isEqualTo(1);
+        assertThat(registry.get("account.updates.coalescing.ratio").summary().mean()).isEqualTo(2.0);
+    }
+
+    @Test
+    void keepsTheBatchAndBacksOffWhileTheDatabaseIsDown() {
+        var failing = new AccountRepo(null) {
+            @Override
+            void upsertAll(Collection<OpenAPIExample.Request> requests) {
+                throw new IllegalStateException("Database down");
+            }
+
+            @Override
+            void upsert(OpenAPIExample.Request request) {
+                throw new IllegalStateException("Database down");
+            }
+
+            @Override
+            void deadLetter(OpenAPIExample.Request request, String error) {
+                deadLetters.add(request);
+            }
+        };
+        var writeBehind = new AccountWriteBehind(failing, new SimpleMeterRegistry(), false, 10, 10, Duration.ofMillis(200), Duration.ofSeconds(1));
+        writeBehind.offer(update("1", "10"));
+
+        assertThatThrownBy(writeBehind::flush).isInstanceOf(IllegalStateException.class);
+        assertThat(writeBehind.retryDelay()).isEqualTo(Duration.ofMillis(400));
+        assertThatThrownBy(writeBehind::flush).isInstanceOf(IllegalStateException.class);
+        assertThat(writeBehind.retryDelay()).isEqualTo(Duration.ofMillis(800));
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(writeBehind::flush).isInstanceOf(IllegalStateException.class);
+        }
+
+        //However long the outage, the acknowledged update stays pending
+        assertThat(writeBehind.retryDelay()).isEqualTo(Duration.ofSeconds(1));
+        assertThat(writeBehind.pending()).isEqualTo(1);
+        assertThat(deadLetters).isEmpty();
+    }
+
+    @Test
+    void deadLettersRejectedRowsAndWritesTheOthers() {
+        var written = new ArrayList<OpenAPIExample.Request>();
+        var rejecting = new AccountRepo(null) {
+            @Override
+            void upsertAll(Collection<OpenAPIExample.Request> requests) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+
+            @Override
+            void upsert(OpenAPIExample.Request request) {
+                if (request.accountNumber().equals("bad")) {
+                    throw new DataIntegrityViolationException("value too long");
+                }
+                written.add(request);
+            }
+
+            @Override
+            void deadLetter(OpenAPIExample.Request request, String error) {
+                deadLetters.add(request);
+            }
+        };
+        var registry = new SimpleMeterRegistry();
+        var writeBehind = new AccountWriteBehind(rejecting, registry, false, 10, 10, Duration.ofHours(1), Duration.ofHours(1));
+        writeBehind.offer(update("1", "10"));
+        writeBehind.offer(update("bad", "10"));
+        writeBehind.offer(update("2", "10"));
+
+        writeBehind.flush();
+
+        assertThat(written).extracting(OpenAPIExample.Request::accountNumber).containsExactlyInAnyOrder("1", "2");
+        assertThat(deadLetters).extracting(OpenAPIExample.Request::accountNumber).containsExactly("bad");
+        assertThat(writeBehind.pending()).isZero();
+        assertThat(registry.get("account.updates.dead.lettered").counter().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,102 @@
+package jon.modern_infra.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//Authenticated requests per second through the filter, a pool of users each one repeating its token as clients do
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(8)
+public class JwtAuthenticationBenchmark {
+    private static final int USERS = 1_000;
+
+    @Param({"RS256", "ES256"})
+    private String algorithm;
+    @Param({"false", "true"})
+    private boolean cache;
+
+    private JwtAuthenticationFilter filter;
+    private String[] headers;
+    private final FilterChain chain = (request, response) -> SecurityContextHolder.getContext().getAuthentication().getName();
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        Algorithm signer;
+        Algorithm verifier;
+        if (algorithm.equals("RS256")) {
+            var generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            var keys = generator.generateKeyPair();
+            signer = Algorithm.RSA256(null, (RSAPrivateKey) keys.getPrivate());
+            verifier = Algorithm.RSA256((RSAPublicKey) keys.getPublic(), null);
+        } else {
+            var generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            var keys = generator.generateKeyPair();
+            signer = Algorithm.ECDSA256(null, (ECPrivateKey) keys.getPrivate());
+            verifier = Algorithm.ECDSA256((ECPublicKey) keys.getPublic(), null);
+        }
+
+        var properties = new JwtProperties(null, "https://auth.mi.com", Duration.ofSeconds(30), "roles",
+                new JwtProperties.Cache(cache, 100_000, Duration.ofMinutes(5)));
+        filter = new JwtAuthenticationFilter(new JwtAuthenticator(verifier, properties, new SimpleMeterRegistry()));
+
+        headers = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            headers[i] = "Bearer " + JWT.create()
+                    .withIssuer("https://auth.mi.com")
+                    .withSubject(UUID.randomUUID().toString())
+                    .withClaim("roles", List.of("USER"))
+                    .withExpiresAt(Instant.now().plus(Duration.ofHours(1)))
+                    .sign(signer);
+        }
+    }
+
+    @Benchmark
+    public int authenticatedRequest(Cursor cursor) throws Exception {
+        var request = new MockHttpServletRequest("GET", "/authRequired");
+        request.addHeader(HttpHeaders.AUTHORIZATION, headers[cursor.next++ % USERS]);
+        var response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response.getStatus();
+    }
+}
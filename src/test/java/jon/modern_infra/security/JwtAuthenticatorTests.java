@@ -0,0 +1,58 @@
+package jon.modern_infra.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtAuthenticatorTests {
+
+    @Test
+    void mapsClaimsToThePrincipalTheAuditListenerExpects() throws Exception {
+        var generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        var keys = generator.generateKeyPair();
+        var authenticator = new JwtAuthenticator(Algorithm.RSA256((RSAPublicKey) keys.getPublic(), null),
+                new JwtProperties(null, "https://auth.mi.com", Duration.ofSeconds(30), "roles", new JwtProperties.Cache(true, 100, Duration.ofMinutes(5))),
+                new SimpleMeterRegistry());
+
+        var userId = UUID.randomUUID().toString();
+        var signer = Algorithm.RSA256(null, (RSAPrivateKey) keys.getPrivate());
+        var token = JWT.create()
+                .withIssuer("https://auth.mi.com")
+                .withSubject(userId)
+                .withClaim("preferred_username", "jon")
+                .withClaim("roles", List.of("ADMIN"))
+                .withExpiresAt(Instant.now().plus(Duration.ofMinutes(10)))
+                .sign(signer);
+
+        var authentication = authenticator.authenticate(token);
+
+        assertThat(authentication.getName()).isEqualTo("jon");
+        assertThat(((UserDetails) authentication.getPrincipal()).getAuthorities()).extracting(GrantedAuthority::getAuthority)
+                .containsExactlyInAnyOrder("ROLE_ADMIN", JwtAuthenticator.UUID_AUTHORITY + userId);
+        //Cached, the same instance comes back
+        assertThat(authenticator.authenticate(token)).isSameAs(authentication);
+
+        var otherIssuer = JWT.create().withIssuer("https://evil.com").withSubject(userId)
+                .withExpiresAt(Instant.now().plus(Duration.ofMinutes(10))).sign(signer);
+        assertThatThrownBy(() -> authenticator.authenticate(otherIssuer)).isInstanceOf(JWTVerificationException.class);
+        var neverExpires = JWT.create().withIssuer("https://auth.mi.com").withSubject(userId).sign(signer);
+        assertThatThrownBy(() -> authenticator.authenticate(neverExpires)).isInstanceOf(JWTVerificationException.class);
+        assertThatThrownBy(() -> authenticator.authenticate(token.substring(0, token.length() - 2))).isInstanceOf(JWTVerificationException.class);
+    }
+}
@@ -0,0 +1,40 @@
+#!/usr/bin/env bash
+# Time to first request, from launching the JVM to the first 200, default jar vs. fast-start (AOT + CDS)
+# Needs ./mvnw -Pfast-start -DskipTests package first, and Postgres up as for any start
+# Usage: ./ttfr.sh [runs]
+set -euo pipefail
+
+RUNS=${1:-5}
+JAR=$(ls target/*.jar | grep -v plain | head -n 1)
+FAST_JAR=target/fast-start/$(basename "$JAR")
+URL=http://localhost:9090/api/micrometer/ES-0001/balance
+
+measure() {
+  local start pid
+  start=$(date +%s%N)
+  "$@" > /dev/null 2>&1 &
+  pid=$!
+  until curl -sf -o /dev/null "$URL"; do
+    sleep 0.01
+  done
+  echo $(( ($(date +%s%N) - start) / 1000000 ))
+  kill "$pid"
+  wait "$pid" 2> /dev/null || true
+}
+
+median() {
+  sort -n | awk '{ v[NR] = $1 } END { print (NR % 2) ? v[(NR + 1) / 2] : (v[NR / 2] + v[NR / 2 + 1]) / 2 }'
+}
+
+run() {
+  local name=$1
+  shift
+  local times=()
+  for _ in $(seq "$RUNS"); do
+    times+=("$(measure "$@")")
+  done
+  echo "$name: median $(printf '%s\n' "${times[@]}" | median) ms of ${times[*]}"
+}
+
+run default java -jar "$JAR"
+run fast-start java -XX:SharedArchiveFile=target/fast-start/application.jsa -Dspring.aot.enabled=true -jar "$FAST_JAR"